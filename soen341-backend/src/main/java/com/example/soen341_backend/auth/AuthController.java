@@ -1,7 +1,10 @@
 package com.example.soen341_backend.auth;
 
+import com.example.soen341_backend.exceptions.InvalidTokenException;
+import com.example.soen341_backend.exceptions.ServiceUnavailableException;
 import com.example.soen341_backend.security.EmailService;
 import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.security.UserDetailsServiceImpl;
 import com.example.soen341_backend.user.Status;
 import com.example.soen341_backend.user.User;
 import com.example.soen341_backend.user.UserRepository;
@@ -30,6 +33,7 @@ public class AuthController {
   private final UserRepository userRepository;
   private final PasswordEncoder passwordEncoder;
   private final EmailService emailService;
+  private final UserDetailsServiceImpl userDetailsService;
 
   private final int RANDOM_FACTOR = 900000;
   private final int RANDOM_THRESHOLD = 100000;
@@ -69,7 +73,7 @@ public class AuthController {
       }
 
       // Generate JWT token if authentication is successful
-      String token = jwtUtils.generateToken(username);
+      String token = jwtUtils.generateToken(user.get());
       userService.updateOnlineStatus(user.get().getId(), Status.ONLINE);
       return ResponseEntity.ok(new AuthResponse(token));
 
@@ -257,15 +261,15 @@ public class AuthController {
       jwtUtils.blacklistToken(token);
 
       // Update user status
-      Optional<User> userOptional = userRepository.findByUsername(username);
-      if (userOptional.isPresent()) {
-        User user = userOptional.get();
-        user.setStatus(Status.OFFLINE);
-        user.setLastActiveAt(Instant.now());
-        userRepository.save(user);
-      }
+      userRepository
+          .findByUsername(username)
+          .ifPresent(user -> userService.updateOnlineStatus(user.getId(), Status.OFFLINE));
 
       return ResponseEntity.ok("Logged out successfully");
+    } catch (InvalidTokenException e) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+    } catch (ServiceUnavailableException e) {
+      throw e;
     } catch (Exception e) {
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
           .body("Error during logout: " + e.getMessage());
@@ -338,7 +342,11 @@ public class AuthController {
     user.setPassword(passwordEncoder.encode(newPassword));
     user.setResetCode("0");
     user.setResetCodeExpiration(null);
+    // Sessions opened with the old password must not survive the reset
+    user.setTokenVersion(user.getTokenVersion() + 1);
     userRepository.save(user);
+    jwtUtils.revokeTokensBefore(user);
+    userDetailsService.evict(user.getUsername());
 
     return ResponseEntity.ok(Map.of("message", "Password reset successful"));
   }
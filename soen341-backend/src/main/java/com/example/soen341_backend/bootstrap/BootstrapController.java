@@ -0,0 +1,35 @@
+package com.example.soen341_backend.bootstrap;
+
+import com.example.soen341_backend.security.JwtUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping(value = "/api/bootstrap", produces = MediaType.APPLICATION_JSON_VALUE)
+@AllArgsConstructor
+@CrossOrigin
+public class BootstrapController {
+
+  private final BootstrapService bootstrapService;
+  private final JwtUtils jwtUtils;
+
+  // Replaces the currentUser, channels, direct messages and per-channel history calls on load
+  @GetMapping
+  public BootstrapResponse getBootstrap(HttpServletRequest request) {
+    // Extract username from JWT token
+    String username = getUserUsernameFromRequest(request);
+    return bootstrapService.getBootstrap(username);
+  }
+
+  // Helper method to extract the username from JWT token in the request
+  private String getUserUsernameFromRequest(HttpServletRequest request) {
+    String bearerToken = request.getHeader("Authorization");
+    if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+      String token = bearerToken.substring(7);
+      return jwtUtils.extractUsername(token);
+    }
+    throw new IllegalStateException("No JWT token found in request");
+  }
+}
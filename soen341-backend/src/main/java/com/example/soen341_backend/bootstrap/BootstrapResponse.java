@@ -0,0 +1,10 @@
+package com.example.soen341_backend.bootstrap;
+
+import com.example.soen341_backend.user.UserDetail;
+import java.util.List;
+
+/** Everything the client needs to render after login, returned in a single response. */
+public record BootstrapResponse(
+    UserDetail user,
+    List<ConversationSnapshot> channels,
+    List<ConversationSnapshot> directMessages) {}
@@ -0,0 +1,73 @@
+package com.example.soen341_backend.bootstrap;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.channel.ChannelSummary;
+import com.example.soen341_backend.message.Message;
+import com.example.soen341_backend.message.MessageService;
+import com.example.soen341_backend.readstate.ReadStateService;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserDetail;
+import com.example.soen341_backend.user.UserService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+@Service
+@AllArgsConstructor
+public class BootstrapService {
+
+  private final UserService userService;
+  private final ChannelService channelService;
+  private final MessageService messageService;
+  private final ReadStateService readStateService;
+
+  public BootstrapResponse getBootstrap(String username) {
+    /**
+     * Builds the initial state of the client for the specified user.
+     *
+     * @param username the username of the requesting user (type: {@link String}).
+     *     <p>Uses four queries regardless of how many conversations the user has: the user
+     *     document, one for all channel and direct message summaries, one aggregation for the
+     *     latest message of every conversation and one lookup of the unread counters. Only while
+     *     some conversations have no read state yet, a count aggregation and a bulk upsert of those
+     *     states follow, see {@link ReadStateService#getUnreadCounts}.
+     * @return the user, their channels and their direct messages (type: {@link BootstrapResponse}).
+     * @throws ResourceNotFoundException if the user does not exist.
+     */
+    User user = userService.getUserByUsername(username);
+    List<ChannelSummary> conversations =
+        channelService.getUserConversations(user.getId(), user.getChannelIds());
+    List<String> conversationIds = conversations.stream().map(ChannelSummary::id).toList();
+
+    Map<String, Message> lastMessages = messageService.getLastMessages(conversationIds);
+    Map<String, Long> unreadCounts =
+        readStateService.getUnreadCounts(user.getId(), conversationIds, readSince(user));
+
+    List<ConversationSnapshot> channels = new ArrayList<>();
+    List<ConversationSnapshot> directMessages = new ArrayList<>();
+    for (ChannelSummary conversation : conversations) {
+      ConversationSnapshot snapshot =
+          new ConversationSnapshot(
+              conversation,
+              lastMessages.get(conversation.id()),
+              unreadCounts.getOrDefault(conversation.id(), 0L));
+      if (conversation.directMessage()) {
+        directMessages.add(snapshot);
+      } else {
+        channels.add(snapshot);
+      }
+    }
+    return new BootstrapResponse(UserDetail.of(user), channels, directMessages);
+  }
+
+  // Conversations without a read state yet count what was sent after the user was last active
+  private static Instant readSince(User user) {
+    if (user.getLastActiveAt() != null) {
+      return user.getLastActiveAt();
+    }
+    return user.getCreatedAt() != null ? user.getCreatedAt() : Instant.EPOCH;
+  }
+}
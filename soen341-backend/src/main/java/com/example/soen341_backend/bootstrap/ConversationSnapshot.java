@@ -0,0 +1,7 @@
+package com.example.soen341_backend.bootstrap;
+
+import com.example.soen341_backend.channel.ChannelSummary;
+import com.example.soen341_backend.message.Message;
+
+/** A channel or direct message as shown in the sidebar: its summary, latest message and badge. */
+public record ConversationSnapshot(ChannelSummary channel, Message lastMessage, long unreadCount) {}
@@ -0,0 +1,2 @@
+/** Package Documentation */
+package com.example.soen341_backend.bootstrap;
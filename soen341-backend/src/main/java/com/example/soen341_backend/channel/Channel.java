@@ -33,5 +33,11 @@ public class Channel {
   private Set<String> members = new HashSet<>();
   private boolean isDirectMessage;
   private Set<String> directMessageMembers = new HashSet<>();
+
+  // Order-independent key of the two participants of a direct message channel, null otherwise.
+  // Unique, so a pair can never end up with two channels.
+  @Indexed(name = "direct_message_key", unique = true, sparse = true)
+  private String directMessageKey;
+
   private Set<String> adminIds = new HashSet<>();
 }
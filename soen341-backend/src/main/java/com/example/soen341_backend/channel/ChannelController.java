@@ -1,6 +1,8 @@
 package com.example.soen341_backend.channel;
 
 import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
 import java.util.Map;
@@ -17,36 +19,55 @@ public class ChannelController {
 
   private final ChannelService channelService;
   private final JwtUtils jwtUtils;
+  private final UserService userService;
 
   @GetMapping
-  public List<Channel> getAllChannels() {
+  public List<ChannelSummary> getAllChannels() {
     return channelService.getAllChannels();
   }
 
   @GetMapping("/{id}")
-  public Channel getChannelById(@PathVariable String id) {
-    return channelService.getChannelById(id);
+  public ChannelDetail getChannelById(@PathVariable String id) {
+    return channelService.getChannelDetail(id);
+  }
+
+  // Members are paged separately so channel responses stay small however large the channel is
+  @GetMapping("/{id}/members")
+  public ChannelMemberPage getChannelMembers(
+      @PathVariable String id,
+      @RequestParam(defaultValue = "0") int offset,
+      @RequestParam(defaultValue = "" + ChannelService.DEFAULT_PAGE_SIZE) int limit) {
+    return channelService.getMembers(id, offset, limit);
   }
 
   @PostMapping("/create-channel")
-  public Channel createChannel(@RequestBody Channel channel, @RequestParam String userId) {
-    return channelService.createChannel(channel, userId);
+  public ChannelDetail createChannel(@RequestBody Channel channel, @RequestParam String userId) {
+    return ChannelDetail.of(channelService.createChannel(channel, userId));
   }
 
   @PutMapping("/{id}")
-  public Channel updateChannel(
+  public ChannelDetail updateChannel(
       @PathVariable String id, @RequestBody Channel channelDetails, @RequestParam String userId) {
     return channelService.updateChannel(id, channelDetails, userId);
   }
 
   @DeleteMapping("/{id}")
-  public ResponseEntity<?> deleteChannel(@PathVariable String id, @RequestParam String userId) {
-    channelService.deleteChannel(id, userId);
-    return ResponseEntity.ok().build();
+  public ResponseEntity<ChannelDeletion> deleteChannel(
+      @PathVariable String id, @RequestParam String userId) {
+    // The channel is gone once this returns, its users and messages are cleaned up in the
+    // background
+    return ResponseEntity.accepted().body(channelService.deleteChannel(id, userId));
+  }
+
+  @GetMapping("/{id}/deletion")
+  public ChannelDeletion getDeletionStatus(@PathVariable String id, HttpServletRequest request) {
+    User user = userService.getUserByUsername(getUserUsernameFromRequest(request));
+    return channelService.getDeletionStatus(id, user.getId());
   }
 
   @PostMapping("/{channelId}/users/{userId}")
-  public Channel addUserToChannel(@PathVariable String channelId, @PathVariable String userId) {
+  public ChannelDetail addUserToChannel(
+      @PathVariable String channelId, @PathVariable String userId) {
     return channelService.addUserToChannel(channelId, userId);
   }
 
@@ -63,7 +84,7 @@ public class ChannelController {
   }
 
   @DeleteMapping("/{channelId}/users/{userId}")
-  public Channel removeUserFromChannel(
+  public ChannelDetail removeUserFromChannel(
       @PathVariable String channelId,
       @PathVariable String userId,
       @RequestParam String requesterId) {
@@ -71,27 +92,26 @@ public class ChannelController {
   }
 
   @GetMapping("/user/{userId}")
-  public List<Channel> getUserChannels(@PathVariable String userId) {
+  public List<ChannelSummary> getUserChannels(@PathVariable String userId) {
     return channelService.getUserChannels(userId);
   }
 
   @GetMapping("/direct-message/{userId}")
-  public List<Channel> getUserDirectMessages(@PathVariable String userId) {
+  public List<ChannelSummary> getUserDirectMessages(@PathVariable String userId) {
     return channelService.getUserDirectMessages(userId);
   }
 
   @PostMapping("/direct-message")
-  public Channel getOrCreateDirectMessageChannel(@RequestBody Map<String, String> users) {
+  public ChannelDetail getOrCreateDirectMessageChannel(@RequestBody Map<String, String> users) {
     String user1Id = users.get("user1Id");
     String user2Id = users.get("user2Id");
-    return channelService.getOrCreateDirectMessageChannel(user1Id, user2Id);
+    return ChannelDetail.of(channelService.getOrCreateDirectMessageChannel(user1Id, user2Id));
   }
 
   @PutMapping("/join")
   public ResponseEntity<?> joinChannel(
       @RequestParam String inviteCode, @RequestParam String userId) {
-    Channel updatedChannel = channelService.joinChannelByInviteCode(inviteCode, userId);
-    return ResponseEntity.ok(updatedChannel);
+    return ResponseEntity.ok(channelService.joinChannelByInviteCode(inviteCode, userId));
   }
 
   private String getUserUsernameFromRequest(HttpServletRequest request) {
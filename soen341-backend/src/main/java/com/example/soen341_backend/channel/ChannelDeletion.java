@@ -0,0 +1,46 @@
+package com.example.soen341_backend.channel;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Progress of the cleanup that follows the deletion of a channel, keyed by the channel id. Also
+ * serves as the job's checkpoint: every step is idempotent, so a job interrupted anywhere is simply
+ * run again from the start once its lease runs out.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "channel_deletions")
+@CompoundIndex(name = "due", def = "{'status': 1, 'leaseUntil': 1}")
+public class ChannelDeletion {
+
+  @Id private String channelId;
+
+  private String requestedBy;
+  private ChannelDeletionStatus status;
+
+  // Number of times a worker has picked the job up
+  private int attempts;
+
+  // While RUNNING, the end of the worker's lease, after which another worker may take the job over
+  private Instant leaseUntil;
+
+  private long usersUpdated;
+  private long messagesDeleted;
+
+  private Instant createdAt;
+  private Instant updatedAt;
+
+  // Finished jobs are kept for a week so their status can still be read
+  @Indexed(expireAfterSeconds = 7 * 24 * 60 * 60)
+  private Instant completedAt;
+
+  private String lastError;
+}
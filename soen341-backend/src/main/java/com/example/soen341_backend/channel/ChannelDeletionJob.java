@@ -0,0 +1,271 @@
+package com.example.soen341_backend.channel;
+
+import com.example.soen341_backend.message.Message;
+import com.example.soen341_backend.readstate.ReadState;
+import com.example.soen341_backend.user.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cleans up after deleted channels on a background worker, so deleting a channel costs the request
+ * a couple of single-document writes whatever its size.
+ *
+ * <p>A job deletes the channel document if it is still there, removes the channel from every user
+ * with one multi-update, drops the read states of the channel and then deletes its messages in
+ * batches along the history index, pausing between batches so a large channel does not saturate the
+ * database. Jobs are claimed with a lease that every batch extends; a job whose worker died or
+ * whose node shut down is resumed by the next poll once its lease runs out, on any node.
+ */
+@Slf4j
+@Component
+public class ChannelDeletionJob {
+
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+  private final int batchSize;
+  private final long throttleMillis;
+  private final long leaseMillis;
+
+  private final Counter messagesDeleted;
+  private final ExecutorService worker;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public ChannelDeletionJob(
+      MongoTemplate mongoTemplate,
+      MongoMappingContext mappingContext,
+      MeterRegistry meterRegistry,
+      @Value("${chat.channels.deletion.batch-size:1000}") int batchSize,
+      @Value("${chat.channels.deletion.throttle-ms:50}") long throttleMillis,
+      @Value("${chat.channels.deletion.lease-ms:120000}") long leaseMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.mappingContext = mappingContext;
+    this.batchSize = batchSize;
+    this.throttleMillis = throttleMillis;
+    this.leaseMillis = leaseMillis;
+    this.messagesDeleted = meterRegistry.counter("chat.channels.deletion.messages_deleted");
+    this.worker =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "channel-deletion");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Records the cleanup of a channel, due immediately. Scheduling the same channel twice returns
+   * the job recorded first.
+   */
+  public ChannelDeletion schedule(String channelId, String requestedBy) {
+    Instant now = Instant.now();
+    try {
+      return mongoTemplate.insert(
+          ChannelDeletion.builder()
+              .channelId(channelId)
+              .requestedBy(requestedBy)
+              .status(ChannelDeletionStatus.PENDING)
+              .leaseUntil(now)
+              .createdAt(now)
+              .updatedAt(now)
+              .build());
+    } catch (DuplicateKeyException e) {
+      return getStatus(channelId).orElseThrow(() -> e);
+    }
+  }
+
+  public Optional<ChannelDeletion> getStatus(String channelId) {
+    return Optional.ofNullable(mongoTemplate.findById(channelId, ChannelDeletion.class));
+  }
+
+  /** Starts the cleanup of a freshly deleted channel without waiting for the next poll. */
+  public void submit(String channelId) {
+    execute(() -> claim(Criteria.where("_id").is(channelId)).ifPresent(this::run));
+  }
+
+  @Scheduled(fixedDelayString = "${chat.channels.deletion.poll-interval-ms:30000}")
+  public void resumeDue() {
+    // Claims happen on the worker, so leases never run out while a job waits in the queue
+    if (inFlight.get() == 0) {
+      execute(
+          () -> {
+            Optional<ChannelDeletion> deletion;
+            while ((deletion = claim(new Criteria())).isPresent()) {
+              run(deletion.get());
+            }
+          });
+    }
+  }
+
+  private void execute(Runnable task) {
+    inFlight.incrementAndGet();
+    worker.execute(
+        () -> {
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            log.warn("Claiming a channel deletion failed: {}", e.getMessage());
+          } finally {
+            inFlight.decrementAndGet();
+          }
+        });
+  }
+
+  // Pending jobs, and running jobs whose worker lease has run out
+  private Optional<ChannelDeletion> claim(Criteria criteria) {
+    Instant now = Instant.now();
+    Query due =
+        new Query(
+            new Criteria()
+                .andOperator(
+                    criteria,
+                    Criteria.where("status")
+                        .in(ChannelDeletionStatus.PENDING, ChannelDeletionStatus.RUNNING)
+                        .and("leaseUntil")
+                        .lte(now)));
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            due,
+            new Update()
+                .set("status", ChannelDeletionStatus.RUNNING)
+                .set("leaseUntil", now.plusMillis(leaseMillis))
+                .set("updatedAt", now)
+                .inc("attempts", 1),
+            FindAndModifyOptions.options().returnNew(true),
+            ChannelDeletion.class));
+  }
+
+  void run(ChannelDeletion deletion) {
+    String channelId = deletion.getChannelId();
+    try {
+      // The job is due as soon as it is recorded, so it may run before the request deletes the
+      // channel, or instead of it if that node died in between
+      mongoTemplate.remove(new Query(Criteria.where("_id").is(channelId)), Channel.class);
+
+      long users =
+          mongoTemplate
+              .updateMulti(
+                  new Query(
+                      new Criteria()
+                          .orOperator(
+                              Criteria.where("channelIds").is(channelId),
+                              Criteria.where("adminsForWhichChannels").is(channelId))),
+                  new Update()
+                      .pull("channelIds", channelId)
+                      .pull("adminsForWhichChannels", channelId),
+                  User.class)
+              .getModifiedCount();
+      progress(channelId, new Update().inc("usersUpdated", users));
+
+      mongoTemplate.remove(new Query(Criteria.where("channelId").is(channelId)), ReadState.class);
+
+      if (!deleteMessages(channelId)) {
+        log.info("Deletion of channel {} interrupted, it resumes once its lease ends", channelId);
+        return;
+      }
+      Instant now = Instant.now();
+      mongoTemplate.updateFirst(
+          new Query(Criteria.where("_id").is(channelId)),
+          new Update()
+              .set("status", ChannelDeletionStatus.COMPLETED)
+              .set("completedAt", now)
+              .set("updatedAt", now)
+              .unset("leaseUntil")
+              .unset("lastError"),
+          ChannelDeletion.class);
+      log.info("Channel {} cleaned up after {} attempt(s)", channelId, deletion.getAttempts());
+    } catch (RuntimeException e) {
+      // Left RUNNING: the job is retried from the start once its lease runs out
+      log.warn("Cleaning up channel {} failed: {}", channelId, e.getMessage());
+      try {
+        progress(channelId, new Update().set("lastError", e.getMessage()));
+      } catch (RuntimeException ignored) {
+        // The database is probably unreachable, the lease takes care of the retry
+      }
+    }
+  }
+
+  /**
+   * @return true once every message of the channel is gone, false if the worker was interrupted.
+   */
+  private boolean deleteMessages(String channelId) {
+    Query batch = new Query(Criteria.where("channelId").is(channelId)).limit(batchSize);
+    batch.fields().include("_id");
+    while (!Thread.currentThread().isInterrupted()) {
+      List<String> ids =
+          mongoTemplate.find(batch, Message.class).stream().map(Message::getId).toList();
+      if (ids.isEmpty()) {
+        return true;
+      }
+      long deleted =
+          mongoTemplate
+              .remove(new Query(Criteria.where("_id").in(ids)), Message.class)
+              .getDeletedCount();
+      messagesDeleted.increment(deleted);
+      progress(channelId, new Update().inc("messagesDeleted", deleted));
+
+      try {
+        Thread.sleep(throttleMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return false;
+  }
+
+  // Records progress and extends the lease of the running job
+  private void progress(String channelId, Update update) {
+    Instant now = Instant.now();
+    mongoTemplate.updateFirst(
+        new Query(Criteria.where("_id").is(channelId)),
+        update.set("leaseUntil", now.plusMillis(leaseMillis)).set("updatedAt", now),
+        ChannelDeletion.class);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    Thread initializer = new Thread(this::ensureIndexes, "channel-deletion-indexes");
+    initializer.setDaemon(true);
+    initializer.start();
+  }
+
+  void ensureIndexes() {
+    try {
+      IndexOperations indexOps = mongoTemplate.indexOps(ChannelDeletion.class);
+      new MongoPersistentEntityIndexResolver(mappingContext)
+          .resolveIndexFor(ChannelDeletion.class)
+          .forEach(indexOps::ensureIndex);
+    } catch (Exception e) {
+      log.error("Creating channel deletion indexes failed: {}", e.getMessage());
+    }
+  }
+
+  /** A job still running keeps its lease and is resumed by another node or after the restart. */
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+    worker.shutdownNow();
+    worker.awaitTermination(10, TimeUnit.SECONDS);
+  }
+}
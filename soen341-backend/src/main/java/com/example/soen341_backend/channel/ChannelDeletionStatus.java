@@ -0,0 +1,7 @@
+package com.example.soen341_backend.channel;
+
+public enum ChannelDeletionStatus {
+  PENDING,
+  RUNNING,
+  COMPLETED
+}
@@ -0,0 +1,33 @@
+package com.example.soen341_backend.channel;
+
+import java.util.Set;
+
+/** A single channel as returned by the channel endpoints: its summary plus the invite code. */
+public record ChannelDetail(
+    String id,
+    String name,
+    ChannelType channelType,
+    String creatorId,
+    boolean directMessage,
+    int memberCount,
+    Set<String> adminIds,
+    Set<String> directMessageMembers,
+    String senderUsername,
+    String receiverUsername,
+    String inviteCode) {
+
+  public static ChannelDetail of(Channel channel) {
+    return new ChannelDetail(
+        channel.getId(),
+        channel.getName(),
+        channel.getChannelType(),
+        channel.getCreatorId(),
+        channel.isDirectMessage(),
+        channel.getMembers() == null ? 0 : channel.getMembers().size(),
+        channel.getAdminIds(),
+        channel.getDirectMessageMembers(),
+        channel.getSenderUsername(),
+        channel.getReceiverUsername(),
+        channel.getInviteCode());
+  }
+}
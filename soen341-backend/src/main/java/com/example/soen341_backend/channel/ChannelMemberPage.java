@@ -0,0 +1,10 @@
+package com.example.soen341_backend.channel;
+
+import com.example.soen341_backend.user.UserSummary;
+import java.util.List;
+
+/**
+ * One page of a channel's members. {@code nextOffset} is the offset of the following page, or null
+ * once the last member has been returned.
+ */
+public record ChannelMemberPage(List<UserSummary> members, int memberCount, Integer nextOffset) {}
@@ -0,0 +1,27 @@
+package com.example.soen341_backend.channel;
+
+import java.util.Set;
+
+/**
+ * Immutable snapshot of who belongs to a channel and who administers it, as held by {@link
+ * ChannelMembershipCache}.
+ */
+public record ChannelMembership(
+    String channelId, Set<String> memberIds, Set<String> adminIds, boolean directMessage) {
+
+  public static ChannelMembership of(Channel channel) {
+    return new ChannelMembership(
+        channel.getId(),
+        channel.getMembers() == null ? Set.of() : Set.copyOf(channel.getMembers()),
+        channel.getAdminIds() == null ? Set.of() : Set.copyOf(channel.getAdminIds()),
+        channel.isDirectMessage());
+  }
+
+  public boolean isMember(String userId) {
+    return memberIds.contains(userId);
+  }
+
+  public boolean isAdmin(String userId) {
+    return adminIds.contains(userId);
+  }
+}
@@ -0,0 +1,68 @@
+package com.example.soen341_backend.channel;
+
+import com.example.soen341_backend.config.ClusterChangeStreams;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory view of channel membership keyed by channel id. {@link ChannelService} writes
+ * through to it when it saves a channel and invalidates the entry after atomic member and admin
+ * updates, whose results may arrive out of order. The per-message membership check therefore only
+ * reads the channel document once per change. Entries also expire after a while as a safety net
+ * against writes that bypass the service. Entries of channels changed on other nodes are dropped as
+ * the change arrives through a {@link ClusterChangeStreams change stream} on {@code channels}.
+ *
+ * <p>Hit, miss and eviction statistics are published as {@code cache.*} metrics tagged {@code
+ * cache=channelMembership}.
+ */
+@Component
+public class ChannelMembershipCache {
+
+  private final Cache<String, ChannelMembership> cache;
+
+  public ChannelMembershipCache(
+      MeterRegistry meterRegistry,
+      ClusterChangeStreams changeStreams,
+      @Value("${chat.channels.membership-cache.max-size:10000}") long maxSize,
+      @Value("${chat.channels.membership-cache.ttl-minutes:30}") long ttlMinutes) {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "channelMembership");
+    changeStreams.watch(
+        "channels",
+        change -> {
+          String channelId = ClusterChangeStreams.documentId(change);
+          if (channelId != null) {
+            cache.invalidate(channelId);
+          }
+        },
+        cache::invalidateAll);
+  }
+
+  public ChannelMembership get(String channelId, Function<String, ChannelMembership> loader) {
+    return cache.get(channelId, loader);
+  }
+
+  public void put(Channel channel) {
+    cache.put(channel.getId(), ChannelMembership.of(channel));
+  }
+
+  public void invalidate(String channelId) {
+    cache.invalidate(channelId);
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+}
@@ -7,14 +7,14 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface ChannelRepository extends MongoRepository<Channel, String> {
+public interface ChannelRepository
+    extends MongoRepository<Channel, String>, ChannelRepositoryCustom {
 
   Optional<Channel> findByInviteCode(String inviteCode);
 
   Optional<Channel> findByName(String name);
 
-  @Query("{ 'members': ?0, 'isDirectMessage': true }")
-  List<Channel> findByIsDirectMessageFalse();
+  Optional<Channel> findByDirectMessageKey(String directMessageKey);
 
   /*
   @Query("{ 'directMessageMembers': ?0 }")
@@ -0,0 +1,72 @@
+package com.example.soen341_backend.channel;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+public interface ChannelRepositoryCustom {
+
+  /** Loads the summaries of the channels matching {@code criteria}, ordered by name. */
+  List<ChannelSummary> findSummaries(Criteria criteria);
+
+  Optional<ChannelDetail> findDetail(String channelId);
+
+  /**
+   * Loads up to {@code limit} member ids of a channel starting at {@code offset}, in the order they
+   * are stored, together with the total member count.
+   *
+   * @return the slice, or empty if the channel does not exist.
+   */
+  Optional<MemberSlice> findMemberSlice(String channelId, int offset, int limit);
+
+  /**
+   * Sets the name of a channel with {@code $set}, leaving its members and admins untouched.
+   *
+   * @return whether the channel exists.
+   */
+  boolean rename(String channelId, String name);
+
+  /**
+   * Atomically adds a member with {@code $addToSet}, leaving the rest of the document untouched.
+   *
+   * @return whether the channel exists.
+   */
+  boolean addMember(String channelId, String userId);
+
+  /**
+   * Atomically removes a member with {@code $pull}.
+   *
+   * @return whether the channel exists.
+   */
+  boolean removeMember(String channelId, String userId);
+
+  /**
+   * Atomically adds an admin with {@code $addToSet}.
+   *
+   * @return whether the channel exists.
+   */
+  boolean addAdmin(String channelId, String userId);
+
+  /**
+   * Atomically inserts the given direct message channel unless a channel with the same {@code
+   * directMessageKey} exists, relying on the unique index on that key.
+   *
+   * @return the pair's channel, whether it was inserted by this call or already existed.
+   */
+  Channel upsertDirectMessage(Channel channel);
+
+  /**
+   * Sets {@code pairKey} on the oldest direct message channel of the two users that was created
+   * before channels carried a key and has not been backfilled yet.
+   *
+   * @return the pair's channel, or empty if the pair has no channel at all.
+   */
+  Optional<Channel> claimLegacyDirectMessage(String pairKey, String userId, String receiverId);
+
+  boolean hasMember(String channelId, String userId);
+
+  /** Looks up only the id of the channel with the given invite code. */
+  Optional<String> findIdByInviteCode(String inviteCode);
+
+  record MemberSlice(List<String> memberIds, int memberCount) {}
+}
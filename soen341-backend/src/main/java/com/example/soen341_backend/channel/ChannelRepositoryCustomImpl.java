@@ -0,0 +1,192 @@
+package com.example.soen341_backend.channel;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * Read-side queries for channels. Everything is projected in the database, so member id arrays are
+ * never sent to the application unless a page of them is asked for. Membership changes are single
+ * atomic updates, so concurrent joins and leaves never overwrite each other.
+ */
+@RequiredArgsConstructor
+public class ChannelRepositoryCustomImpl implements ChannelRepositoryCustom {
+
+  private static final String[] SUMMARY_FIELDS = {
+    "name",
+    "channelType",
+    "creatorId",
+    "adminIds",
+    "directMessageMembers",
+    "senderUsername",
+    "receiverUsername"
+  };
+
+  private final MongoTemplate mongoTemplate;
+
+  @Override
+  public List<ChannelSummary> findSummaries(Criteria criteria) {
+    return mongoTemplate
+        .aggregate(
+            Aggregation.newAggregation(
+                Channel.class,
+                Aggregation.match(criteria),
+                Aggregation.sort(Sort.by("name")),
+                summaryProjection()),
+            ChannelSummary.class)
+        .getMappedResults();
+  }
+
+  @Override
+  public Optional<ChannelDetail> findDetail(String channelId) {
+    return Optional.ofNullable(
+        mongoTemplate
+            .aggregate(
+                Aggregation.newAggregation(
+                    Channel.class,
+                    Aggregation.match(Criteria.where("_id").is(channelId)),
+                    summaryProjection().andInclude("inviteCode")),
+                ChannelDetail.class)
+            .getUniqueMappedResult());
+  }
+
+  @Override
+  public Optional<MemberSlice> findMemberSlice(String channelId, int offset, int limit) {
+    return Optional.ofNullable(
+        mongoTemplate
+            .aggregate(
+                Aggregation.newAggregation(
+                    Channel.class,
+                    Aggregation.match(Criteria.where("_id").is(channelId)),
+                    Aggregation.project()
+                        .and(
+                            ArrayOperators.Slice.sliceArrayOf(members())
+                                .offset(offset)
+                                .itemCount(limit))
+                        .as("memberIds")
+                        .and(ArrayOperators.Size.lengthOfArray(members()))
+                        .as("memberCount")),
+                MemberSlice.class)
+            .getUniqueMappedResult());
+  }
+
+  private static ProjectionOperation summaryProjection() {
+    return Aggregation.project(SUMMARY_FIELDS)
+        .and(ConditionalOperators.ifNull("isDirectMessage").then(false))
+        .as("directMessage")
+        .and(ArrayOperators.Size.lengthOfArray(members()))
+        .as("memberCount");
+  }
+
+  // Channels written before members were always set may not have the array at all
+  private static AggregationExpression members() {
+    return ConditionalOperators.ifNull("members").then(List.of());
+  }
+
+  @Override
+  public boolean rename(String channelId, String name) {
+    return modify(channelId, Update.update("name", name));
+  }
+
+  @Override
+  public boolean addMember(String channelId, String userId) {
+    return modify(channelId, new Update().addToSet("members", userId));
+  }
+
+  @Override
+  public boolean removeMember(String channelId, String userId) {
+    return modify(channelId, new Update().pull("members", userId));
+  }
+
+  @Override
+  public boolean addAdmin(String channelId, String userId) {
+    return modify(channelId, new Update().addToSet("adminIds", userId));
+  }
+
+  @Override
+  public Channel upsertDirectMessage(Channel channel) {
+    Query pair = new Query(Criteria.where("directMessageKey").is(channel.getDirectMessageKey()));
+    Update onInsert =
+        new Update()
+            .setOnInsert("name", channel.getName())
+            .setOnInsert("channelType", channel.getChannelType())
+            .setOnInsert("isDirectMessage", true)
+            .setOnInsert("members", channel.getMembers())
+            .setOnInsert("directMessageMembers", channel.getDirectMessageMembers())
+            .setOnInsert("adminIds", Set.of())
+            .setOnInsert("senderUsername", channel.getSenderUsername())
+            .setOnInsert("receiverUsername", channel.getReceiverUsername());
+    try {
+      return mongoTemplate.findAndModify(
+          pair,
+          onInsert,
+          FindAndModifyOptions.options().upsert(true).returnNew(true),
+          Channel.class);
+    } catch (DuplicateKeyException e) {
+      // Lost the insert race to a concurrent upsert of the same pair, which is now visible
+      return mongoTemplate.findOne(pair, Channel.class);
+    }
+  }
+
+  @Override
+  public Optional<Channel> claimLegacyDirectMessage(
+      String pairKey, String userId, String receiverId) {
+    Query legacy =
+        Query.query(
+                Criteria.where("isDirectMessage")
+                    .is(true)
+                    .and("directMessageKey")
+                    .exists(false)
+                    .and("directMessageMembers")
+                    .all(userId, receiverId)
+                    .size(2))
+            .with(Sort.by("id"));
+    try {
+      return Optional.ofNullable(
+          mongoTemplate.findAndModify(
+              legacy,
+              Update.update("directMessageKey", pairKey),
+              FindAndModifyOptions.options().returnNew(true),
+              Channel.class));
+    } catch (DuplicateKeyException e) {
+      // Another request or the startup backfill gave the pair its key first
+      return Optional.ofNullable(
+          mongoTemplate.findOne(
+              Query.query(Criteria.where("directMessageKey").is(pairKey)), Channel.class));
+    }
+  }
+
+  @Override
+  public boolean hasMember(String channelId, String userId) {
+    return mongoTemplate.exists(
+        new Query(Criteria.where("_id").is(channelId).and("members").is(userId)), Channel.class);
+  }
+
+  @Override
+  public Optional<String> findIdByInviteCode(String inviteCode) {
+    Query query = new Query(Criteria.where("inviteCode").is(inviteCode));
+    query.fields().include("_id");
+    return Optional.ofNullable(mongoTemplate.findOne(query, Channel.class)).map(Channel::getId);
+  }
+
+  // Nothing is read back, so a large member array never travels with a membership change
+  private boolean modify(String channelId, Update update) {
+    return mongoTemplate
+            .updateFirst(new Query(Criteria.where("_id").is(channelId)), update, Channel.class)
+            .getMatchedCount()
+        > 0;
+  }
+}
@@ -1,22 +1,77 @@
 package com.example.soen341_backend.channel;
 
+import com.example.soen341_backend.exceptions.BadRequestException;
 import com.example.soen341_backend.exceptions.ResourceNotFoundException;
 import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.message.Message;
 import com.example.soen341_backend.user.User;
 import com.example.soen341_backend.user.UserService;
+import com.example.soen341_backend.user.UserSummary;
 import java.util.*;
 import lombok.AllArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
 @Service
 @AllArgsConstructor
 public class ChannelService {
 
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  public static final int MAX_PAGE_SIZE = 200;
+
   private final ChannelRepository channelRepository;
   private final UserService userService;
+  private final ChannelMembershipCache membershipCache;
+  private final MembershipJournal membershipJournal;
+  private final ChannelDeletionJob channelDeletionJob;
+  private final DirectMessageChannelCache directMessageChannelCache;
+  private final DirectMessageKeyInitializer directMessageKeyInitializer;
+
+  public List<ChannelSummary> getAllChannels() {
+    return channelRepository.findSummaries(Criteria.where("isDirectMessage").ne(true));
+  }
+
+  public ChannelDetail getChannelDetail(String channelId) {
+    return channelRepository
+        .findDetail(channelId)
+        .orElseThrow(
+            () -> new ResourceNotFoundException("Channel not found with id: " + channelId));
+  }
 
-  public List<Channel> getAllChannels() {
-    return channelRepository.findByIsDirectMessageFalse();
+  public ChannelMemberPage getMembers(String channelId, int offset, int limit) {
+    /**
+     * Retrieves one page of a channel's members, without loading the rest of the member list.
+     *
+     * @param channelId the unique identifier of the channel (type: {@link String}).
+     * @param offset the position of the first member to return (type: int).
+     * @param limit the maximum number of members to return (type: int).
+     * @return the page of member summaries (type: {@link ChannelMemberPage}).
+     * @throws ResourceNotFoundException if the channel does not exist.
+     * @throws BadRequestException if the offset or limit is out of range.
+     */
+    if (offset < 0 || limit < 1) {
+      throw new BadRequestException("Offset must not be negative and limit must be positive");
+    }
+    int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+    ChannelRepositoryCustom.MemberSlice slice =
+        channelRepository
+            .findMemberSlice(channelId, offset, pageSize)
+            .orElseThrow(
+                () -> new ResourceNotFoundException("Channel not found with id: " + channelId));
+
+    // Keep the stored member order, users that no longer exist are left out
+    Map<String, UserSummary> summariesById = new HashMap<>();
+    userService
+        .getUserSummaries(slice.memberIds())
+        .forEach(summary -> summariesById.put(summary.id(), summary));
+    List<UserSummary> members =
+        slice.memberIds().stream().map(summariesById::get).filter(Objects::nonNull).toList();
+
+    int next = offset + slice.memberIds().size();
+    return new ChannelMemberPage(
+        members, slice.memberCount(), next < slice.memberCount() ? next : null);
   }
 
   public Channel getChannelById(String channelId) {
@@ -26,6 +81,29 @@ public class ChannelService {
             () -> new ResourceNotFoundException("Channel not found with id: " + channelId));
   }
 
+  public ChannelMembership getMembership(String channelId) {
+    /**
+     * Retrieves the member and admin sets of a channel from the membership cache, loading the
+     * channel on a miss.
+     *
+     * @param channelId the unique identifier of the channel (type: {@link String}).
+     * @return the cached membership snapshot (type: {@link ChannelMembership}).
+     * @throws ResourceNotFoundException if the channel does not exist.
+     */
+    return membershipCache.get(channelId, id -> ChannelMembership.of(getChannelById(id)));
+  }
+
+  public boolean isMember(String channelId, String userId) {
+    return getMembership(channelId).isMember(userId);
+  }
+
+  // Admin checks read the cached membership, which every role change invalidates
+  private void validateAdmin(String channelId, String userId) {
+    if (!getMembership(channelId).isAdmin(userId)) {
+      throw new UnauthorizedException("You don't have permission to perform this action");
+    }
+  }
+
   public Channel createChannel(Channel channel, String creatorUserId) {
     /**
      * Creates a new group channel and assigns the creator as a member and admin.
@@ -58,6 +136,10 @@ public class ChannelService {
     // Default to GROUP type if not specified
     channel.setChannelType(ChannelType.GROUP);
 
+    // Assigned up front so the creator's membership is journaled before the channel exists
+    channel.setId(new ObjectId().toHexString());
+    membershipJournal.record(channel.getId(), creatorUserId);
+
     Channel savedChannel;
     try {
       savedChannel = channelRepository.save(channel);
@@ -72,62 +154,99 @@ public class ChannelService {
       throw e;
     }
 
+    membershipCache.put(savedChannel);
+
     // Add the channel to the creator's channels list
-    userService.addChannelToUser(creatorUserId, savedChannel.getId());
+    membershipJournal.sync(savedChannel.getId(), creatorUserId);
 
     // Add the channel to the creator's admin channels list
     userService.addAdminChannelToUser(creatorUserId, savedChannel.getId());
 
-    System.out.println("Channel created: " + savedChannel.getId());
-    System.out.println("Channel members: " + savedChannel.getMembers());
-    System.out.println("Channel admin IDs: " + savedChannel.getAdminIds());
-
     return savedChannel;
   }
 
-  public Channel updateChannel(String id, Channel channelDetails, String userId) {
+  public ChannelDetail updateChannel(String id, Channel channelDetails, String userId) {
     /**
      * Updates the name of an existing channel if the user has admin privileges.
      *
      * @param id the unique identifier of the channel to be updated (type: {@link String}).
      * @param channelDetails the object containing updated channel details (type: {@link Channel}).
      * @param userId the unique identifier of the user attempting the update (type: {@link String}).
-     *     <p>Retrieves the channel by ID and validates if the user has admin privileges. Updates
-     *     the channel name and saves the changes to the database.
-     * @return the updated channel object after persistence (type: {@link Channel}).
+     *     <p>Validates that the user has admin privileges, then sets only the channel name, so
+     *     joins and leaves applied at the same time are kept.
+     * @return the {@link ChannelDetail} of the channel after the update.
+     * @throws ResourceNotFoundException if the channel does not exist.
+     * @throws UnauthorizedException if the user is not an admin of the channel.
      */
-    Channel channel = getChannelById(id);
-
-    userService.validateAdminRole(userId, channel.getId());
-    channel.setName(channelDetails.getName());
+    validateAdmin(id, userId);
 
-    return channelRepository.save(channel);
+    boolean found;
+    try {
+      found = channelRepository.rename(id, channelDetails.getName());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException("A channel with this name already exists");
+    }
+    if (!found) {
+      throw new ResourceNotFoundException("Channel not found with id: " + id);
+    }
+    return getChannelDetail(id);
   }
 
-  public void deleteChannel(String id, String userId) {
+  public ChannelDeletion deleteChannel(String id, String userId) {
     /**
      * Deletes a channel if the user has admin privileges.
      *
      * @param id the unique identifier of the channel to be deleted (type: {@link String}).
      * @param userId the unique identifier of the user attempting the deletion (type: {@link
      *     String}).
-     *     <p>Retrieves the channel by ID and validates if the user has admin privileges. Removes
-     *     the channel from all associated users' channel lists before deletion. Deletes the channel
-     *     from the database.
-     * @return void (no return value).
+     *     <p>Validates that the user has admin privileges, records the cleanup job and deletes the
+     *     channel document. Removing the channel from its users and deleting its messages is left
+     *     to the {@link ChannelDeletionJob}, so the call takes the same time for any channel size.
+     *     Deleting a channel that is already being deleted returns the existing job.
+     * @return the cleanup job, whose progress can be followed through {@link
+     *     #getDeletionStatus(String, String)} (type: {@link ChannelDeletion}).
+     * @throws ResourceNotFoundException if the channel does not exist.
+     * @throws UnauthorizedException if the user is not an admin of the channel.
      */
-    Channel channel = getChannelById(id);
-    userService.validateAdminRole(userId, channel.getId());
-
-    // Remove channel from all users' channels list
-    for (String memberId : channel.getMembers()) {
-      userService.removeChannelFromUser(memberId, id);
+    // A channel that is gone has no membership left to check, only its cleanup job
+    if (!channelRepository.existsById(id)) {
+      return getDeletionStatus(id, userId);
     }
+    validateAdmin(id, userId);
+
+    // Recorded first, and the job deletes the channel too, so a crash between the two writes
+    // leaves no half-deleted channel behind
+    ChannelDeletion deletion = channelDeletionJob.schedule(id, userId);
+    channelRepository.deleteById(id);
+    membershipCache.invalidate(id);
+    channelDeletionJob.submit(id);
+    return deletion;
+  }
 
-    channelRepository.delete(channel);
+  public ChannelDeletion getDeletionStatus(String channelId, String userId) {
+    /**
+     * Returns the cleanup job of a deleted channel to the user who deleted it.
+     *
+     * @param channelId the unique identifier of the deleted channel (type: {@link String}).
+     * @param userId the unique identifier of the user asking (type: {@link String}).
+     *     <p>The channel and its membership are gone by then, so the job's requester is the only
+     *     user it can be checked against.
+     * @return the cleanup job (type: {@link ChannelDeletion}).
+     * @throws ResourceNotFoundException if the channel has no cleanup job.
+     * @throws UnauthorizedException if the user did not delete the channel.
+     */
+    ChannelDeletion deletion =
+        channelDeletionJob
+            .getStatus(channelId)
+            .orElseThrow(
+                () -> new ResourceNotFoundException("Channel not found with id: " + channelId));
+    if (!Objects.equals(deletion.getRequestedBy(), userId)) {
+      throw new UnauthorizedException("You don't have permission to perform this action");
+    }
+    return deletion;
   }
 
-  public Channel addUserToChannel(String channelId, String userId) {
+  public ChannelDetail addUserToChannel(String channelId, String userId) {
     /**
      * Adds a user to a specified channel.
      *
@@ -135,27 +254,25 @@ public class ChannelService {
      *     {@link String}).
      * @param userId the unique identifier of the user to be added to the channel (type: {@link
      *     String}).
-     *     <p>Retrieves the channel by ID and adds the user to its members list. Updates the channel
-     *     in the database and associates the channel with the user. Saves the updated user data.
-     * @return the updated {@link Channel} object after adding the user.
+     *     <p>Adds the user to the channel's members with one atomic update, so concurrent joins
+     *     never overwrite each other, then brings the user's channel list in line through the
+     *     {@link MembershipJournal}.
+     * @return the {@link ChannelDetail} of the channel after adding the user.
+     * @throws ResourceNotFoundException if the user or the channel does not exist.
      */
-    Channel channel = getChannelById(channelId);
-    channel.getMembers().add(userId);
-
-    Channel updatedChannel = channelRepository.save(channel);
+    userService.getUserSummary(userId);
 
-    // Find the user
-    User user = userService.getUserById(userId);
-
-    // Add the channel to the user's list of channels
-    user.getChannelIds().add(channelId);
-
-    userService.saveUser(user);
+    membershipJournal.record(channelId, userId);
+    if (!channelRepository.addMember(channelId, userId)) {
+      throw new ResourceNotFoundException("Channel not found with id: " + channelId);
+    }
+    membershipCache.invalidate(channelId);
+    membershipJournal.sync(channelId, userId);
 
-    return updatedChannel;
+    return getChannelDetail(channelId);
   }
 
-  public Channel removeUserFromChannel(String channelId, String userId, String requesterId) {
+  public ChannelDetail removeUserFromChannel(String channelId, String userId, String requesterId) {
     /**
      * Removes a user from a specified channel.
      *
@@ -166,24 +283,43 @@ public class ChannelService {
      * @param requesterId the unique identifier of the user making the removal request (type: {@link
      *     String}).
      *     <p>Ensures that only an admin or the user themselves can remove a user from a channel.
-     *     Retrieves the channel by ID and removes the user from its members list. Updates the
-     *     channel in the database and removes the channel association from the user.
-     * @return the updated {@link Channel} object after removing the user.
+     *     Removes the user from the channel's members with one atomic update, then brings the
+     *     user's channel list in line through the {@link MembershipJournal}.
+     * @return the {@link ChannelDetail} of the channel after removing the user.
      * @throws UnauthorizedException if the requester does not have permission to remove the user.
      */
 
     // Only admin or the user themselves can remove a user from a channel
-    if (!userService.isAdmin(requesterId, channelId) && !userId.equals(requesterId)) {
+    if (!userId.equals(requesterId) && !getMembership(channelId).isAdmin(requesterId)) {
       throw new UnauthorizedException("You don't have permission to remove this user");
     }
 
-    Channel channel = getChannelById(channelId);
-    channel.getMembers().remove(userId);
+    membershipJournal.record(channelId, userId);
+    if (!channelRepository.removeMember(channelId, userId)) {
+      throw new ResourceNotFoundException("Channel not found with id: " + channelId);
+    }
+    membershipCache.invalidate(channelId);
+    membershipJournal.sync(channelId, userId);
 
-    Channel updatedChannel = channelRepository.save(channel);
-    userService.removeChannelFromUser(userId, channelId);
+    return getChannelDetail(channelId);
+  }
 
-    return updatedChannel;
+  public String getOrCreateDirectMessageChannelId(String userId, String receiverId) {
+    /**
+     * Resolves the id of the direct message channel between two users, creating it if needed.
+     *
+     * @param userId the unique identifier of the first user (type: {@link String}).
+     * @param receiverId the unique identifier of the second user (type: {@link String}).
+     *     <p>Answered from the {@link DirectMessageChannelCache} once the pair has been seen, so
+     *     sending a direct message needs no channel read after warm-up.
+     * @return the id of the pair's channel (type: {@link String}).
+     * @throws ResourceNotFoundException if the channel has to be created and a user does not exist.
+     */
+    String channelId = directMessageChannelCache.get(Message.conversationKey(userId, receiverId));
+    if (channelId != null) {
+      return channelId;
+    }
+    return getOrCreateDirectMessageChannel(userId, receiverId).getId();
   }
 
   public Channel getOrCreateDirectMessageChannel(String userId, String receiverId) {
@@ -193,30 +329,38 @@ public class ChannelService {
      *
      * @param userId the unique identifier of the first user (type: {@link String}).
      * @param receiverId the unique identifier of the second user (type: {@link String}).
-     *     <p>Checks if a DM channel already exists between the two users. If found, returns the
-     *     existing channel; otherwise, creates a new DM channel. Adds the new channel to both
-     *     users' channel lists and establishes a direct message relationship.
+     *     <p>Looks the channel up by the pair key of the two users, then, until the startup
+     *     backfill has finished, among channels created before they carried a key, which are given
+     *     the key when found. If none exists, inserts one with an atomic upsert on that key, so
+     *     concurrent first messages of a pair all end up with the same channel, and records the
+     *     direct message relationship on both users.
      * @return the existing or newly created {@link Channel} object representing the direct message
      *     channel.
+     * @throws ResourceNotFoundException if the channel has to be created and a user does not exist.
      */
+    // Same key as the messages of the conversation carry
+    String pairKey = Message.conversationKey(userId, receiverId);
+
+    Optional<Channel> existing = channelRepository.findByDirectMessageKey(pairKey);
+    if (existing.isEmpty() && !directMessageKeyInitializer.isBackfilled()) {
+      // Until the startup backfill reaches it, an older channel of the pair has no key. The scan
+      // behind this is unindexed, so it is only worth it while keyless channels can remain
+      existing = channelRepository.claimLegacyDirectMessage(pairKey, userId, receiverId);
+    }
+    if (existing.isPresent()) {
+      directMessageChannelCache.put(pairKey, existing.get().getId());
+      return existing.get();
+    }
 
     // Check if users exist
     User sender = userService.getUserById(userId);
     User recipient = userService.getUserById(receiverId);
 
-    // Try to find existing DM channel
-    List<Channel> user1Channels = channelRepository.findIfMemberIsInDirectMessage(userId);
-
-    for (Channel channel : user1Channels) {
-      if (channel.getDirectMessageMembers().contains(receiverId)) {
-        return channel;
-      }
-    }
-
     // Create new DM channel if not exists
     Channel dmChannel = new Channel();
     dmChannel.setName("DM: " + sender.getUsername() + " & " + recipient.getUsername());
     dmChannel.setDirectMessage(true);
+    dmChannel.setDirectMessageKey(pairKey);
 
     Set<String> participants = new HashSet<>();
     participants.add(userId);
@@ -227,10 +371,11 @@ public class ChannelService {
     dmChannel.setSenderUsername(sender.getUsername());
     dmChannel.setReceiverUsername(recipient.getUsername());
 
-    dmChannel.setInviteCode(null);
     dmChannel.setChannelType(ChannelType.DIRECT);
 
-    Channel savedChannel = channelRepository.save(dmChannel);
+    Channel savedChannel = channelRepository.upsertDirectMessage(dmChannel);
+    membershipCache.put(savedChannel);
+    directMessageChannelCache.put(pairKey, savedChannel.getId());
 
     // Add to users' direct message lists
     userService.addDirectMessageToUser(userId, receiverId);
@@ -239,12 +384,12 @@ public class ChannelService {
     return savedChannel;
   }
 
-  public List<Channel> getUserChannels(String userId) {
-    User user = userService.getUserById(userId);
-    return channelRepository.findAllById(user.getChannelIds());
+  public List<ChannelSummary> getUserChannels(String userId) {
+    return channelRepository.findSummaries(
+        Criteria.where("_id").in(userService.getChannelIds(userId)));
   }
 
-  public List<Channel> getUserDirectMessages(String userId) {
+  public List<ChannelSummary> getUserDirectMessages(String userId) {
     /**
      * Retrieves a list of direct message (DM) channels for a specified user.
      *
@@ -253,17 +398,20 @@ public class ChannelService {
      *     <p>Fetches the user by ID to ensure they exist. Queries the database for direct message
      *     channels in which the user is a participant. Logs a message if no direct message channels
      *     are found for the user.
-     * @return a {@link List} of {@link Channel} objects representing the user's direct message
-     *     channels.
+     * @return a {@link List} of {@link ChannelSummary} objects representing the user's direct
+     *     message channels.
      * @throws ResourceNotFoundException if the user does not exist.
      */
-    User user = userService.getUserById(userId);
-
-    if (user == null) {
-      throw new ResourceNotFoundException("User not found with id: " + userId);
-    }
+    userService.getUserSummary(userId);
 
-    List<Channel> directMessages = channelRepository.findIfMemberIsInDirectMessage(userId);
+    List<ChannelSummary> directMessages =
+        channelRepository.findSummaries(
+            Criteria.where("channelType")
+                .is(ChannelType.DIRECT)
+                .and("isDirectMessage")
+                .is(true)
+                .and("directMessageMembers")
+                .is(userId));
 
     // Optional logging or validation
     if (directMessages.isEmpty()) {
@@ -273,56 +421,70 @@ public class ChannelService {
     return directMessages;
   }
 
+  public List<ChannelSummary> getUserConversations(String userId, Set<String> channelIds) {
+    /**
+     * Retrieves the channels a user belongs to together with their direct message channels in a
+     * single query.
+     *
+     * @param userId the unique identifier of the user (type: {@link String}).
+     * @param channelIds the channel ids stored on the user's document (type: {@link Set}).
+     *     <p>The caller already holds the user, so the channel ids are passed in instead of being
+     *     loaded again.
+     * @return a {@link List} of {@link ChannelSummary} objects ordered by name; direct message
+     *     channels are flagged with {@code directMessage}.
+     */
+    Criteria directMessages =
+        Criteria.where("channelType")
+            .is(ChannelType.DIRECT)
+            .and("isDirectMessage")
+            .is(true)
+            .and("directMessageMembers")
+            .is(userId);
+    if (channelIds == null || channelIds.isEmpty()) {
+      return channelRepository.findSummaries(directMessages);
+    }
+    return channelRepository.findSummaries(
+        new Criteria().orOperator(Criteria.where("_id").in(channelIds), directMessages));
+  }
+
   private String generateInviteCode() {
     Random random = new Random();
     return String.format("%06d", random.nextInt(1000000));
   }
 
-  public Channel joinChannelByInviteCode(String inviteCode, String userId) {
+  public ChannelDetail joinChannelByInviteCode(String inviteCode, String userId) {
     /**
      * Allows a user to join a channel using an invite code.
      *
      * @param inviteCode the invite code provided by the user.
      * @param userId the ID of the user joining the channel.
-     * @return the updated {@link Channel} object after adding the user.
+     * @return the {@link ChannelDetail} of the channel after adding the user.
      * @throws ResourceNotFoundException if no channel with the given invite code exists.
      */
-    Channel channel =
+    String channelId =
         channelRepository
-            .findByInviteCode(inviteCode)
+            .findIdByInviteCode(inviteCode)
             .orElseThrow(() -> new ResourceNotFoundException("Invalid invite code"));
 
-    if (channel.getMembers().contains(userId)) {
+    if (isMember(channelId, userId)) {
       throw new IllegalArgumentException("User is already in this channel");
     }
 
-    channel.getMembers().add(userId);
-    Channel updatedChannel = channelRepository.save(channel);
-
-    User user = userService.getUserById(userId);
-    user.getChannelIds().add(channel.getId());
-    userService.saveUser(user);
-
-    return updatedChannel;
+    return addUserToChannel(channelId, userId);
   }
 
   public void promoteUserToAdmin(String channelId, String userIdToPromote, String adminUsername) {
     User admin = userService.getUserByUsername(adminUsername);
 
-    if (userService.isAdmin(admin.getId(), channelId)) {
+    if (getMembership(channelId).isAdmin(admin.getId())) {
       // Update user's admin status
       userService.addAdminChannelToUser(userIdToPromote, channelId);
 
       // Also update the channel's adminIds set for redundancy and faster lookups
-      Channel channel = getChannelById(channelId);
-      if (channel.getAdminIds() == null) {
-        channel.setAdminIds(new HashSet<>());
+      if (!channelRepository.addAdmin(channelId, userIdToPromote)) {
+        throw new ResourceNotFoundException("Channel not found with id: " + channelId);
       }
-      channel.getAdminIds().add(userIdToPromote);
-      channelRepository.save(channel);
-
-      System.out.println("Promoted user " + userIdToPromote + " to admin in channel " + channelId);
-      System.out.println("Channel admin IDs: " + channel.getAdminIds());
+      membershipCache.invalidate(channelId);
     }
   }
 }
@@ -0,0 +1,19 @@
+package com.example.soen341_backend.channel;
+
+import java.util.Set;
+
+/**
+ * What channel and DM lists need to render a channel. The member ids are replaced by their count;
+ * the members themselves are paged through {@code GET /api/channels/{id}/members}.
+ */
+public record ChannelSummary(
+    String id,
+    String name,
+    ChannelType channelType,
+    String creatorId,
+    boolean directMessage,
+    int memberCount,
+    Set<String> adminIds,
+    Set<String> directMessageMembers,
+    String senderUsername,
+    String receiverUsername) {}
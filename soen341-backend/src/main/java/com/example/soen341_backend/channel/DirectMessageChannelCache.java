@@ -0,0 +1,37 @@
+package com.example.soen341_backend.channel;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory map from a direct message pair key (see {@link Channel#getDirectMessageKey()})
+ * to the id of the pair's channel. A pair's channel never changes once created, so entries need no
+ * invalidation and a warm sender resolves the channel of a direct message without any read.
+ *
+ * <p>Hit, miss and eviction statistics are published as {@code cache.*} metrics tagged {@code
+ * cache=directMessageChannels}.
+ */
+@Component
+public class DirectMessageChannelCache {
+
+  private final Cache<String, String> cache;
+
+  public DirectMessageChannelCache(
+      MeterRegistry meterRegistry,
+      @Value("${chat.channels.dm-cache.max-size:100000}") long maxSize) {
+    this.cache = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "directMessageChannels");
+  }
+
+  public String get(String pairKey) {
+    return cache.getIfPresent(pairKey);
+  }
+
+  public void put(String pairKey, String channelId) {
+    cache.put(pairKey, channelId);
+  }
+}
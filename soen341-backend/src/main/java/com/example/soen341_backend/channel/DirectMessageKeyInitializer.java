@@ -0,0 +1,123 @@
+package com.example.soen341_backend.channel;
+
+import com.example.soen341_backend.message.Message;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes sure the unique index on {@code Channel.directMessageKey} exists and backfills the key on
+ * direct message channels created before it was introduced.
+ *
+ * <p>The index is created before the backfill, so the first channel of a pair to be backfilled
+ * claims the key; any older duplicate channel of the same pair is left without a key and is no
+ * longer returned by pair lookups. Its messages stay reachable through their conversation key. Runs
+ * once on a background thread after startup; until it is {@link #isBackfilled() done}, lookups that
+ * miss fall back to a scan for the pair's keyless channel.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DirectMessageKeyInitializer {
+
+  private static final int BACKFILL_BATCH_SIZE = 1000;
+
+  private final MongoTemplate mongoTemplate;
+
+  @Value("${chat.channels.dm-key-init.enabled:true}")
+  private boolean enabled;
+
+  private volatile boolean backfilled;
+
+  /** Whether every direct message channel of this deployment carries its key. */
+  public boolean isBackfilled() {
+    return backfilled;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!enabled) {
+      // Keys are maintained some other way, nothing is left to scan for
+      backfilled = true;
+      return;
+    }
+    Thread worker = new Thread(this::run, "dm-key-init");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  void run() {
+    try {
+      mongoTemplate
+          .indexOps(Channel.class)
+          .ensureIndex(
+              new Index()
+                  .on("directMessageKey", Sort.Direction.ASC)
+                  .named("direct_message_key")
+                  .unique()
+                  .sparse());
+      long[] counts = backfill();
+      backfilled = true;
+      log.info(
+          "Direct message key check complete, backfilled {} channels, skipped {} duplicates",
+          counts[0],
+          counts[1]);
+    } catch (Exception e) {
+      log.error("Direct message key check failed: {}", e.getMessage());
+    }
+  }
+
+  // Returns {backfilled, duplicates}
+  long[] backfill() {
+    Query pending =
+        Query.query(
+                Criteria.where("isDirectMessage")
+                    .is(true)
+                    .and("directMessageKey")
+                    .exists(false)
+                    .and("directMessageMembers")
+                    .size(2))
+            .with(Sort.by("id"));
+    pending.fields().include("directMessageMembers");
+
+    long backfilled = 0;
+    long duplicates = 0;
+    Object after = null;
+    List<Channel> batch;
+    do {
+      Query page = Query.of(pending).limit(BACKFILL_BATCH_SIZE);
+      if (after != null) {
+        // Duplicates keep matching the query, so page past them by id
+        page.addCriteria(Criteria.where("id").gt(after));
+      }
+      batch = mongoTemplate.find(page, Channel.class);
+      for (Channel channel : batch) {
+        List<String> members = List.copyOf(channel.getDirectMessageMembers());
+        try {
+          mongoTemplate.updateFirst(
+              Query.query(Criteria.where("id").is(channel.getId())),
+              Update.update(
+                  "directMessageKey", Message.conversationKey(members.get(0), members.get(1))),
+              Channel.class);
+          backfilled++;
+        } catch (DuplicateKeyException e) {
+          duplicates++;
+          log.warn("Direct message channel {} duplicates another one", channel.getId());
+        }
+        after = channel.getId();
+      }
+    } while (batch.size() == BACKFILL_BATCH_SIZE);
+    return new long[] {backfilled, duplicates};
+  }
+}
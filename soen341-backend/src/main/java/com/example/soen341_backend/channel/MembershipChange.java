@@ -0,0 +1,27 @@
+package com.example.soen341_backend.channel;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Intent record of a membership change, written before the channel is updated and removed once the
+ * user side is known to match it. See {@link MembershipJournal}.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "membership_changes")
+public class MembershipChange {
+
+  @Id private String id;
+
+  private String channelId;
+  private String userId;
+
+  @Indexed private Instant createdAt;
+}
@@ -0,0 +1,122 @@
+package com.example.soen341_backend.channel;
+
+import com.example.soen341_backend.user.UserRepository;
+import java.time.Instant;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps {@code User.channelIds} in step with {@code Channel.members} without multi-document
+ * transactions.
+ *
+ * <p>{@code Channel.members} is the source of truth. A membership change first records its intent
+ * here, then updates the channel atomically, then syncs the user: the user side is derived from
+ * what the channel holds at that moment, not from the change that was asked for. Intents are kept
+ * for a grace period and synced once more by a sweep before being dropped. This repairs changes
+ * interrupted between the two writes, and concurrent join/leave pairs on different nodes whose
+ * inline syncs interleaved, since by then the channel holds the final outcome.
+ */
+@Slf4j
+@Component
+public class MembershipJournal {
+
+  private static final int SWEEP_BATCH_SIZE = 500;
+
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+  private final ChannelRepository channelRepository;
+  private final UserRepository userRepository;
+  private final long graceMillis;
+
+  public MembershipJournal(
+      MongoTemplate mongoTemplate,
+      MongoMappingContext mappingContext,
+      ChannelRepository channelRepository,
+      UserRepository userRepository,
+      @Value("${chat.channels.membership-journal.grace-ms:30000}") long graceMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.mappingContext = mappingContext;
+    this.channelRepository = channelRepository;
+    this.userRepository = userRepository;
+    this.graceMillis = graceMillis;
+  }
+
+  /** Records that the membership of a user in a channel is about to change. */
+  public void record(String channelId, String userId) {
+    mongoTemplate.insert(
+        MembershipChange.builder()
+            .channelId(channelId)
+            .userId(userId)
+            .createdAt(Instant.now())
+            .build());
+  }
+
+  /** Makes the user's channel list agree with the channel's member list for this pair. */
+  public void sync(String channelId, String userId) {
+    if (channelRepository.hasMember(channelId, userId)) {
+      userRepository.addChannelId(userId, channelId);
+    } else {
+      userRepository.removeChannelId(userId, channelId);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${chat.channels.membership-journal.sweep-interval-ms:30000}")
+  public void sweep() {
+    Query settled =
+        new Query(Criteria.where("createdAt").lt(Instant.now().minusMillis(graceMillis)))
+            .with(Sort.by("createdAt"))
+            .limit(SWEEP_BATCH_SIZE);
+    List<MembershipChange> changes;
+    try {
+      changes = mongoTemplate.find(settled, MembershipChange.class);
+    } catch (RuntimeException e) {
+      log.warn("Reading the membership journal failed: {}", e.getMessage());
+      return;
+    }
+
+    for (MembershipChange change : changes) {
+      try {
+        sync(change.getChannelId(), change.getUserId());
+        mongoTemplate.remove(
+            new Query(Criteria.where("_id").is(change.getId())), MembershipChange.class);
+      } catch (RuntimeException e) {
+        // Stays in the journal for the next sweep
+        log.warn(
+            "Syncing membership of user {} in channel {} failed: {}",
+            change.getUserId(),
+            change.getChannelId(),
+            e.getMessage());
+      }
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    Thread initializer = new Thread(this::ensureIndexes, "membership-journal-indexes");
+    initializer.setDaemon(true);
+    initializer.start();
+  }
+
+  void ensureIndexes() {
+    try {
+      IndexOperations indexOps = mongoTemplate.indexOps(MembershipChange.class);
+      new MongoPersistentEntityIndexResolver(mappingContext)
+          .resolveIndexFor(MembershipChange.class)
+          .forEach(indexOps::ensureIndex);
+    } catch (Exception e) {
+      log.error("Creating membership journal indexes failed: {}", e.getMessage());
+    }
+  }
+}
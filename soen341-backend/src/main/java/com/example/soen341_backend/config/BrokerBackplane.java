@@ -0,0 +1,20 @@
+package com.example.soen341_backend.config;
+
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+
+/**
+ * Carries {@code /topic} and {@code /queue} traffic between the STOMP sessions of every node. User
+ * destinations ({@code /user/{userId}/queue/...}) are not brokered as such: Spring's user
+ * destination handler translates them into per-session {@code /queue} destinations first. The
+ * implementation is picked with {@code chat.websocket.backplane}: {@code loopback} keeps delivery
+ * inside this JVM (single node, tests), {@code stomp-relay} forwards it through an external STOMP
+ * broker so a message handled on one node reaches subscribers connected to any other.
+ */
+public interface BrokerBackplane {
+
+  /** Destination prefixes whose subscriptions and messages are handled by the backplane. */
+  String[] DESTINATION_PREFIXES = {"/topic", "/queue"};
+
+  /** Enables the broker for {@link #DESTINATION_PREFIXES} on the given registry. */
+  void configure(MessageBrokerRegistry registry);
+}
@@ -0,0 +1,190 @@
+package com.example.soen341_backend.config;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.stereotype.Component;
+
+/**
+ * Follows MongoDB change streams so that caches held in the memory of one node hear about writes
+ * made by every node. A cache {@link #watch registers} the collection it mirrors together with a
+ * resync action, which runs each time the watch is (re)started since changes made while it was down
+ * are not replayed.
+ *
+ * <p>Change streams need a replica set or a sharded cluster. On a standalone server the watches
+ * fail and are retried every {@code chat.cluster.change-streams.retry-ms}; the caches then only see
+ * their own node's writes, which is all there is with a single node.
+ */
+@Slf4j
+@Component
+public class ClusterChangeStreams {
+
+  private static final Duration START_TIMEOUT = Duration.ofSeconds(10);
+
+  private final MongoTemplate mongoTemplate;
+  private final boolean enabled;
+  private final long retryMillis;
+  private final List<Watch> watches = new CopyOnWriteArrayList<>();
+  private volatile MessageListenerContainer container;
+
+  public ClusterChangeStreams(
+      MongoTemplate mongoTemplate,
+      @Value("${chat.cluster.change-streams.enabled:true}") boolean enabled,
+      @Value("${chat.cluster.change-streams.retry-ms:30000}") long retryMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.enabled = enabled;
+    this.retryMillis = retryMillis;
+  }
+
+  /**
+   * Passes every change to {@code collection}, whichever node made it, to {@code listener}.
+   *
+   * @param collection the collection to watch.
+   * @param listener receives the change events; it runs on the change stream thread.
+   * @param resync brings the cache back in line when changes may have been missed.
+   */
+  public void watch(
+      String collection, Consumer<ChangeStreamDocument<Document>> listener, Runnable resync) {
+    watches.add(new Watch(collection, listener, resync));
+  }
+
+  /** The {@code _id} of the changed document as a string, or {@code null} if there is none. */
+  public static String documentId(ChangeStreamDocument<Document> change) {
+    BsonDocument key = change.getDocumentKey();
+    BsonValue id = key == null ? null : key.get("_id");
+    if (id == null) {
+      return null;
+    }
+    if (id.isObjectId()) {
+      return id.asObjectId().getValue().toHexString();
+    }
+    return id.isString() ? id.asString().getValue() : null;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!enabled) {
+      return;
+    }
+    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("change-stream-");
+    executor.setDaemon(true);
+    DefaultMessageListenerContainer listenerContainer =
+        new DefaultMessageListenerContainer(mongoTemplate, executor);
+    listenerContainer.start();
+    container = listenerContainer;
+
+    // Own thread rather than @Scheduled: starting a watch waits for its cursor to open
+    Thread supervisor = new Thread(() -> supervise(listenerContainer), "change-stream-watch");
+    supervisor.setDaemon(true);
+    supervisor.start();
+  }
+
+  // Starts the watches that are not running yet or whose change stream failed
+  private void supervise(MessageListenerContainer listenerContainer) {
+    while (listenerContainer.isRunning()) {
+      for (Watch watch : watches) {
+        watch.restartIfInactive(listenerContainer);
+      }
+      try {
+        Thread.sleep(retryMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    MessageListenerContainer current = container;
+    if (current != null) {
+      // Cancelling a watch waits for its cursor, which can be stuck waiting for a server; the
+      // client closes the cursors anyway once the context is gone
+      Thread stopper = new Thread(current::stop, "change-stream-stop");
+      stopper.setDaemon(true);
+      stopper.start();
+    }
+  }
+
+  private static final class Watch {
+
+    private final String collection;
+    private final Consumer<ChangeStreamDocument<Document>> listener;
+    private final Runnable resync;
+
+    private Subscription subscription;
+    private volatile boolean failed;
+    private boolean warned;
+
+    Watch(String collection, Consumer<ChangeStreamDocument<Document>> listener, Runnable resync) {
+      this.collection = collection;
+      this.listener = listener;
+      this.resync = resync;
+    }
+
+    void restartIfInactive(MessageListenerContainer container) {
+      if (subscription != null && subscription.isActive() && !failed) {
+        return;
+      }
+      if (subscription != null) {
+        container.remove(subscription);
+      }
+
+      failed = false;
+      MessageListener<ChangeStreamDocument<Document>, Document> messageListener =
+          message -> onChange(message.getRaw());
+      ChangeStreamRequest<Document> request =
+          ChangeStreamRequest.builder(messageListener).collection(collection).build();
+      subscription =
+          container.register(
+              request,
+              Document.class,
+              error -> {
+                failed = true;
+                if (!warned) {
+                  warned = true;
+                  log.warn("Change stream on {} failed: {}", collection, error.getMessage());
+                }
+              });
+
+      try {
+        if (subscription.await(START_TIMEOUT) && !failed) {
+          // Changes made before the stream opened were not seen
+          resync.run();
+          warned = false;
+          log.info("Watching changes to {}", collection);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        failed = true;
+        log.warn("Resyncing after watching {} failed: {}", collection, e.getMessage());
+      }
+    }
+
+    private void onChange(ChangeStreamDocument<Document> change) {
+      try {
+        listener.accept(change);
+      } catch (RuntimeException e) {
+        log.warn("Applying a change to {} failed: {}", collection, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.example.soen341_backend.config;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Answers "is this user connected anywhere?" across all nodes. With the {@code stomp-relay}
+ * backplane the underlying {@link SimpUserRegistry} merges the registries broadcast by the other
+ * nodes; with {@code loopback} it only sees this node, which is then the whole cluster.
+ *
+ * <p>Users are keyed by principal name, which is the user id (see {@code ChatPrincipal}).
+ */
+@Component
+@RequiredArgsConstructor
+public class ClusterUserRegistry {
+
+  private final SimpUserRegistry simpUserRegistry;
+
+  public boolean isConnected(String userId) {
+    return simpUserRegistry.getUser(userId) != null;
+  }
+
+  /** Number of open STOMP sessions of the user across the cluster. */
+  public int getSessionCount(String userId) {
+    SimpUser user = simpUserRegistry.getUser(userId);
+    return user == null ? 0 : user.getSessions().size();
+  }
+
+  /** Ids of the users with at least one open STOMP session on any node. */
+  public Set<String> getConnectedUserIds() {
+    return simpUserRegistry.getUsers().stream().map(SimpUser::getName).collect(Collectors.toSet());
+  }
+
+  /** Number of distinct connected users across the cluster. */
+  public int getUserCount() {
+    return simpUserRegistry.getUserCount();
+  }
+}
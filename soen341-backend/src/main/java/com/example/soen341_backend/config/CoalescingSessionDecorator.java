@@ -0,0 +1,114 @@
+package com.example.soen341_backend.config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+/**
+ * Collects the frames of a session that opted into {@link FrameCoalescer coalescing} and writes
+ * them as a single WebSocket message once the window has passed or the size cap is reached,
+ * whichever comes first. STOMP frames are NUL-terminated, so the concatenation is itself a valid
+ * sequence of frames. Frames keep their order. Frames of other sessions pass straight through
+ * without taking the send lock.
+ */
+@Slf4j
+class CoalescingSessionDecorator extends WebSocketSessionDecorator {
+
+  private final FrameCoalescer coalescer;
+
+  // Held while a batch is written, so batches and pass-through frames never overtake each other
+  private final Object sendLock = new Object();
+
+  private List<byte[]> pending = new ArrayList<>();
+  private int pendingBytes;
+  private boolean flushScheduled;
+
+  CoalescingSessionDecorator(WebSocketSession session, FrameCoalescer coalescer) {
+    super(session);
+    this.coalescer = coalescer;
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    if (!coalescer.isOptedIn(getAttributes())) {
+      // Opting in happens on CONNECT and is never undone, so nothing can be pending here
+      super.sendMessage(message);
+      return;
+    }
+    if (!(message instanceof TextMessage text)) {
+      synchronized (sendLock) {
+        flush();
+        super.sendMessage(message);
+      }
+      return;
+    }
+
+    boolean full;
+    synchronized (this) {
+      pending.add(text.asBytes());
+      pendingBytes += text.getPayloadLength();
+      full = pendingBytes >= coalescer.getMaxBytes();
+      if (!full && !flushScheduled) {
+        flushScheduled = true;
+        coalescer.schedule(this::flushQuietly);
+      }
+    }
+    if (full) {
+      synchronized (sendLock) {
+        flush();
+      }
+    }
+  }
+
+  @Override
+  public void close(CloseStatus status) throws IOException {
+    // Frames sent right before closing, an ERROR frame for instance, must not be lost
+    flushQuietly();
+    super.close(status);
+  }
+
+  private void flushQuietly() {
+    try {
+      synchronized (sendLock) {
+        flush();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.debug("Flushing coalesced frames of session {} failed: {}", getId(), e.getMessage());
+    }
+  }
+
+  // Callers hold sendLock
+  private void flush() throws IOException {
+    List<byte[]> frames;
+    int size;
+    synchronized (this) {
+      flushScheduled = false;
+      if (pending.isEmpty()) {
+        return;
+      }
+      frames = pending;
+      size = pendingBytes;
+      pending = new ArrayList<>();
+      pendingBytes = 0;
+    }
+
+    if (frames.size() == 1) {
+      super.sendMessage(new TextMessage(frames.get(0)));
+    } else {
+      byte[] batch = new byte[size];
+      int offset = 0;
+      for (byte[] frame : frames) {
+        System.arraycopy(frame, 0, batch, offset, frame.length);
+        offset += frame.length;
+      }
+      super.sendMessage(new TextMessage(batch));
+    }
+    coalescer.sent(frames.size());
+  }
+}
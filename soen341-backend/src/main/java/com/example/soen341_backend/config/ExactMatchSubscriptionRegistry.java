@@ -0,0 +1,173 @@
+package com.example.soen341_backend.config;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Subscription registry for the simple broker that resolves a destination with a single hash
+ * lookup. Every chat destination ({@code /topic/channel/{id}}, and the {@code
+ * /queue/direct-messages-user{session}} that user destinations resolve to) is subscribed to
+ * literally, so there is no need to run each published message through the pattern matcher of
+ * {@link DefaultSubscriptionRegistry}.
+ *
+ * <p>Each destination holds an immutable snapshot of its subscribers that is replaced on
+ * subscribe/unsubscribe (copy-on-write), so fan-out never takes a lock or allocates. Updates to one
+ * destination do not contend with updates to another. Destinations containing Ant-style wildcards
+ * are still accepted and handed to a {@link DefaultSubscriptionRegistry} fallback that is only
+ * consulted while such subscriptions exist.
+ */
+public class ExactMatchSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+  private static final MultiValueMap<String, String> NO_SUBSCRIBERS =
+      CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+  /** destination -> immutable (sessionId -> subscriptionIds) snapshot */
+  private final Map<String, MultiValueMap<String, String>> subscribersByDestination =
+      new ConcurrentHashMap<>();
+
+  /** sessionId -> (subscriptionId -> destination), used to unsubscribe and on disconnect */
+  private final Map<String, Map<String, String>> destinationsBySession = new ConcurrentHashMap<>();
+
+  private final DefaultSubscriptionRegistry patternRegistry = new DefaultSubscriptionRegistry();
+  private final AtomicInteger patternSubscriptions = new AtomicInteger();
+
+  @Override
+  protected void addSubscriptionInternal(
+      String sessionId, String subscriptionId, String destination, Message<?> message) {
+    String previous =
+        destinationsBySession
+            .computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+            .put(subscriptionId, destination);
+    if (previous != null) {
+      // A client re-using a subscription id replaces its earlier subscription
+      detach(sessionId, subscriptionId, previous);
+    }
+
+    if (isPattern(destination)) {
+      patternSubscriptions.incrementAndGet();
+      patternRegistry.registerSubscription(message);
+      return;
+    }
+    subscribersByDestination.compute(
+        destination,
+        (key, current) -> {
+          LinkedMultiValueMap<String, String> copy = copyOf(current);
+          copy.add(sessionId, subscriptionId);
+          return CollectionUtils.unmodifiableMultiValueMap(copy);
+        });
+  }
+
+  @Override
+  protected void removeSubscriptionInternal(
+      String sessionId, String subscriptionId, Message<?> message) {
+    Map<String, String> subscriptions = destinationsBySession.get(sessionId);
+    if (subscriptions == null) {
+      return;
+    }
+    String destination = subscriptions.remove(subscriptionId);
+    if (destination != null) {
+      detach(sessionId, subscriptionId, destination);
+    }
+  }
+
+  @Override
+  public void unregisterAllSubscriptions(String sessionId) {
+    Map<String, String> subscriptions = destinationsBySession.remove(sessionId);
+    if (subscriptions == null) {
+      return;
+    }
+    boolean hadPatterns = false;
+    for (Map.Entry<String, String> entry : subscriptions.entrySet()) {
+      if (isPattern(entry.getValue())) {
+        patternSubscriptions.decrementAndGet();
+        hadPatterns = true;
+      } else {
+        removeSubscriber(entry.getValue(), sessionId, entry.getKey());
+      }
+    }
+    if (hadPatterns) {
+      patternRegistry.unregisterAllSubscriptions(sessionId);
+    }
+  }
+
+  @Override
+  protected MultiValueMap<String, String> findSubscriptionsInternal(
+      String destination, Message<?> message) {
+    MultiValueMap<String, String> exact =
+        subscribersByDestination.getOrDefault(destination, NO_SUBSCRIBERS);
+    if (patternSubscriptions.get() == 0) {
+      return exact;
+    }
+
+    MultiValueMap<String, String> matched = patternRegistry.findSubscriptions(message);
+    if (matched.isEmpty()) {
+      return exact;
+    }
+    LinkedMultiValueMap<String, String> merged = copyOf(exact);
+    matched.forEach(merged::addAll);
+    return merged;
+  }
+
+  /** Number of destinations that currently have at least one literal subscriber. */
+  public int getDestinationCount() {
+    return subscribersByDestination.size();
+  }
+
+  private void detach(String sessionId, String subscriptionId, String destination) {
+    if (isPattern(destination)) {
+      patternSubscriptions.decrementAndGet();
+      // The fallback only acts on UNSUBSCRIBE messages, which a replacing SUBSCRIBE is not
+      SimpMessageHeaderAccessor accessor =
+          SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+      accessor.setSessionId(sessionId);
+      accessor.setSubscriptionId(subscriptionId);
+      patternRegistry.unregisterSubscription(
+          MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    } else {
+      removeSubscriber(destination, sessionId, subscriptionId);
+    }
+  }
+
+  private void removeSubscriber(String destination, String sessionId, String subscriptionId) {
+    subscribersByDestination.computeIfPresent(
+        destination,
+        (key, current) -> {
+          LinkedMultiValueMap<String, String> copy = copyOf(current);
+          var ids = copy.get(sessionId);
+          if (ids != null) {
+            ids.remove(subscriptionId);
+            if (ids.isEmpty()) {
+              copy.remove(sessionId);
+            }
+          }
+          // Returning null drops the destination entirely once its last subscriber leaves
+          return copy.isEmpty() ? null : CollectionUtils.unmodifiableMultiValueMap(copy);
+        });
+  }
+
+  private static LinkedMultiValueMap<String, String> copyOf(MultiValueMap<String, String> current) {
+    LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>();
+    if (current != null) {
+      // Deep copy: the lists inside a published snapshot must never change
+      current.forEach((sessionId, ids) -> copy.put(sessionId, new ArrayList<>(ids)));
+    }
+    return copy;
+  }
+
+  private static boolean isPattern(String destination) {
+    return destination.indexOf('*') >= 0
+        || destination.indexOf('?') >= 0
+        || destination.indexOf('{') >= 0;
+  }
+}
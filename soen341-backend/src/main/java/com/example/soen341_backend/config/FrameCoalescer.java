@@ -0,0 +1,86 @@
+package com.example.soen341_backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Opt-in batching of outbound frames. A client sends a {@code coalesce:true} header on its CONNECT
+ * frame to have the STOMP frames it receives within a short window, or up to a size cap, written as
+ * one WebSocket message; see {@link CoalescingSessionDecorator}. Each frame inside is still a
+ * regular STOMP frame, so any STOMP client that parses several frames per message can opt in.
+ * Clients that do not opt in get one message per frame.
+ */
+@Component
+public class FrameCoalescer {
+
+  /** Session attribute set for the sessions that opted in. */
+  static final String OPT_IN_ATTRIBUTE = "frameCoalescing";
+
+  private final long windowMillis;
+  private final int maxBytes;
+  private final Counter frames;
+  private final Counter batches;
+  private final ScheduledExecutorService scheduler;
+
+  public FrameCoalescer(
+      MeterRegistry meterRegistry,
+      @Value("${chat.websocket.coalescing.window-ms:15}") long windowMillis,
+      @Value("${chat.websocket.coalescing.max-bytes:16384}") int maxBytes,
+      @Value("${chat.websocket.coalescing.threads:2}") int threads) {
+    this.windowMillis = windowMillis;
+    this.maxBytes = maxBytes;
+    this.frames = meterRegistry.counter("chat.websocket.coalescing.frames");
+    this.batches = meterRegistry.counter("chat.websocket.coalescing.batches");
+    AtomicInteger threadCount = new AtomicInteger();
+    this.scheduler =
+        Executors.newScheduledThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "ws-coalescer-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Records the choice of a session from the {@code coalesce} header of its CONNECT frame. */
+  public void connected(Map<String, Object> sessionAttributes, String coalesce) {
+    if (sessionAttributes != null && windowMillis > 0 && "true".equalsIgnoreCase(coalesce)) {
+      sessionAttributes.put(OPT_IN_ATTRIBUTE, Boolean.TRUE);
+    }
+  }
+
+  /** Whether any session can opt in, that is whether the window is positive. */
+  boolean isEnabled() {
+    return windowMillis > 0;
+  }
+
+  boolean isOptedIn(Map<String, Object> sessionAttributes) {
+    return Boolean.TRUE.equals(sessionAttributes.get(OPT_IN_ATTRIBUTE));
+  }
+
+  int getMaxBytes() {
+    return maxBytes;
+  }
+
+  void schedule(Runnable flush) {
+    scheduler.schedule(flush, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void sent(int frameCount) {
+    frames.increment(frameCount);
+    batches.increment();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    scheduler.shutdownNow();
+  }
+}
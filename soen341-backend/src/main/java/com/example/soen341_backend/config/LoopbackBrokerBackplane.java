@@ -0,0 +1,44 @@
+package com.example.soen341_backend.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-JVM backplane backed by Spring's simple broker. Messages only reach sessions connected to this
+ * node, which is all there is for a single instance and for tests.
+ */
+@Component
+@ConditionalOnProperty(
+    name = "chat.websocket.backplane",
+    havingValue = "loopback",
+    matchIfMissing = true)
+public class LoopbackBrokerBackplane implements BrokerBackplane {
+
+  private final long heartbeatMillis;
+  private final ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
+
+  public LoopbackBrokerBackplane(
+      @Value("${chat.websocket.heartbeat-ms:10000}") long heartbeatMillis) {
+    this.heartbeatMillis = heartbeatMillis;
+    heartbeatScheduler.setPoolSize(1);
+    heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+    heartbeatScheduler.initialize();
+  }
+
+  @Override
+  public void configure(MessageBrokerRegistry registry) {
+    registry
+        .enableSimpleBroker(DESTINATION_PREFIXES)
+        .setHeartbeatValue(new long[] {heartbeatMillis, heartbeatMillis})
+        .setTaskScheduler(heartbeatScheduler);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    heartbeatScheduler.shutdown();
+  }
+}
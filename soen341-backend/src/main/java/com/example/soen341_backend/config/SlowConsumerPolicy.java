@@ -0,0 +1,11 @@
+package com.example.soen341_backend.config;
+
+/** What to do with outbound frames for a WebSocket session that cannot keep up. */
+public enum SlowConsumerPolicy {
+  /** Discard new frames until the session has drained its backlog. */
+  DROP,
+  /** Keep only the latest frame per destination until the session has drained its backlog. */
+  COALESCE,
+  /** Close the session so the client reconnects and resynchronizes. */
+  DISCONNECT
+}
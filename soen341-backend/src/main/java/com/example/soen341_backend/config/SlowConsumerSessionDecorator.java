@@ -0,0 +1,300 @@
+package com.example.soen341_backend.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+/**
+ * Session decorator that applies a {@link SlowConsumerPolicy} once a session falls behind, i.e.
+ * when its backlog would exceed the size limit or its current send has been blocked for longer than
+ * the time limit.
+ *
+ * <p>Frames are queued in the order they are sent and written by one drain task at a time on the
+ * outbound executor, so the caller never blocks on a slow client. Together with ordered publish on
+ * the outbound channel this keeps each session's frames in order, while the backlog stays here,
+ * bounded and subject to the limits, rather than in the channel's unbounded per-session queue.
+ *
+ * <p>{@link SlowConsumerPolicy#DISCONNECT} terminates the session, like Spring's default. The other
+ * policies stop frames from piling up: {@code DROP} discards them, while {@code COALESCE} keeps the
+ * most recent frame per destination and sends those once the session has caught up, either with its
+ * next frame or, if none comes, on a timer. Batches of coalesced frames are split so each frame is
+ * kept or replaced on its own.
+ */
+@Slf4j
+class SlowConsumerSessionDecorator extends ConcurrentWebSocketSessionDecorator {
+
+  private static final String DESTINATION_HEADER = "\ndestination:";
+  private static final String CONTENT_LENGTH_HEADER = "\ncontent-length:";
+  private static final byte[] HEADERS_END = {'\n', '\n'};
+
+  private final SlowConsumerPolicy policy;
+  private final Executor sendExecutor;
+  private final TaskScheduler scheduler;
+  private final long coalescedFlushMillis;
+  private final Deque<WebSocketMessage<?>> backlog = new ArrayDeque<>();
+  private final Map<String, WebSocketMessage<?>> coalesced = new LinkedHashMap<>();
+  private int backlogBytes;
+  private boolean draining;
+  private long droppedFrames;
+  private boolean flushScheduled;
+
+  SlowConsumerSessionDecorator(
+      WebSocketSession session,
+      int sendTimeLimit,
+      int bufferSizeLimit,
+      SlowConsumerPolicy policy,
+      Executor sendExecutor,
+      TaskScheduler scheduler,
+      long coalescedFlushMillis) {
+    super(session, sendTimeLimit, bufferSizeLimit);
+    this.policy = policy;
+    this.sendExecutor = sendExecutor;
+    this.scheduler = scheduler;
+    this.coalescedFlushMillis = coalescedFlushMillis;
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    synchronized (this) {
+      if (isLagging(message.getPayloadLength())) {
+        if (policy == SlowConsumerPolicy.DISCONNECT) {
+          backlog.clear();
+          backlogBytes = 0;
+          // Handled by the STOMP handler, which closes the session
+          throw new SessionLimitExceededException(
+              "Session " + getId() + " exceeded its send limits", CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        shed(message);
+        return;
+      }
+      // Frames held while lagging are older than this one
+      takeCoalesced().forEach(this::enqueue);
+      enqueue(message);
+    }
+    startDraining();
+  }
+
+  // Callers hold the monitor
+  private boolean isLagging(int incomingBytes) {
+    return backlogBytes + getBufferSize() + incomingBytes > getBufferSizeLimit()
+        || getTimeSinceSendStarted() > getSendTimeLimit();
+  }
+
+  // Callers hold the monitor
+  private void enqueue(WebSocketMessage<?> message) {
+    backlog.add(message);
+    backlogBytes += message.getPayloadLength();
+  }
+
+  private void startDraining() {
+    synchronized (this) {
+      if (draining || backlog.isEmpty()) {
+        return;
+      }
+      draining = true;
+    }
+    try {
+      sendExecutor.execute(this::drain);
+    } catch (TaskRejectedException e) {
+      // The outbound executor is saturated; write on the caller's thread rather than stall
+      drain();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      WebSocketMessage<?> next;
+      synchronized (this) {
+        next = backlog.poll();
+        if (next == null) {
+          draining = false;
+          return;
+        }
+        backlogBytes -= next.getPayloadLength();
+      }
+      try {
+        super.sendMessage(next);
+      } catch (IOException | RuntimeException e) {
+        log.debug("Sending to session {} failed: {}", getId(), e.getMessage());
+        synchronized (this) {
+          backlog.clear();
+          backlogBytes = 0;
+          draining = false;
+        }
+        return;
+      }
+    }
+  }
+
+  // Callers hold the monitor
+  private void shed(WebSocketMessage<?> message) {
+    droppedFrames++;
+    if (policy == SlowConsumerPolicy.COALESCE) {
+      for (WebSocketMessage<?> frame : framesOf(message)) {
+        String destination = destinationOf(frame);
+        if (destination != null) {
+          // Re-insert so the map keeps destinations in order of their latest frame
+          coalesced.remove(destination);
+          coalesced.put(destination, frame);
+        }
+      }
+      scheduleCoalescedFlush();
+    }
+    if (droppedFrames == 1 || droppedFrames % 1000 == 0) {
+      log.warn(
+          "Session {} is a slow consumer, {} outbound frames shed so far ({})",
+          getId(),
+          droppedFrames,
+          policy);
+    }
+  }
+
+  // Held frames are the latest state of their destination, so they must go out even if the
+  // session receives nothing else
+  private synchronized void scheduleCoalescedFlush() {
+    if (!flushScheduled && !coalesced.isEmpty()) {
+      flushScheduled = true;
+      scheduler.schedule(this::flushCoalesced, Instant.now().plusMillis(coalescedFlushMillis));
+    }
+  }
+
+  private void flushCoalesced() {
+    synchronized (this) {
+      flushScheduled = false;
+      if (!isOpen()) {
+        coalesced.clear();
+        return;
+      }
+      if (isLagging(0)) {
+        scheduleCoalescedFlush();
+        return;
+      }
+      takeCoalesced().forEach(this::enqueue);
+    }
+    startDraining();
+  }
+
+  // Callers hold the monitor
+  private List<WebSocketMessage<?>> takeCoalesced() {
+    if (coalesced.isEmpty()) {
+      return List.of();
+    }
+    List<WebSocketMessage<?>> pending = new ArrayList<>(coalesced.values());
+    coalesced.clear();
+    return pending;
+  }
+
+  // Splits a batch written by CoalescingSessionDecorator back into its frames. Works on the raw
+  // bytes and skips bodies by their content-length, since CBOR and Smile bodies are not text and
+  // may contain NUL bytes.
+  private static List<WebSocketMessage<?>> framesOf(WebSocketMessage<?> message) {
+    if (!(message instanceof TextMessage textMessage)) {
+      return List.of(message);
+    }
+    byte[] payload = textMessage.asBytes();
+    List<WebSocketMessage<?>> frames = new ArrayList<>();
+    int start = 0;
+    while (start < payload.length) {
+      int end = frameEnd(payload, start);
+      if (end < 0 || (start == 0 && end == payload.length - 1)) {
+        // A single frame, or bytes that do not parse as frames, are kept as they are
+        return frames.isEmpty() ? List.of(message) : withRest(frames, payload, start);
+      }
+      frames.add(new TextMessage(Arrays.copyOfRange(payload, start, end + 1)));
+      start = end + 1;
+    }
+    return frames;
+  }
+
+  private static List<WebSocketMessage<?>> withRest(
+      List<WebSocketMessage<?>> frames, byte[] payload, int start) {
+    frames.add(new TextMessage(Arrays.copyOfRange(payload, start, payload.length)));
+    return frames;
+  }
+
+  // Index of the NUL that terminates the frame starting at start, or -1 if there is none
+  private static int frameEnd(byte[] payload, int start) {
+    start = skipHeartbeats(payload, start);
+    int headersEnd = indexOf(payload, HEADERS_END, start);
+    if (headersEnd < 0) {
+      return -1;
+    }
+    int bodyStart = headersEnd + HEADERS_END.length;
+    String contentLength =
+        headerOf(
+            new String(payload, start, headersEnd - start, StandardCharsets.UTF_8),
+            CONTENT_LENGTH_HEADER);
+    if (contentLength == null) {
+      return indexOf(payload, new byte[] {0}, bodyStart);
+    }
+    try {
+      int end = bodyStart + Integer.parseInt(contentLength.trim());
+      return end < payload.length && payload[end] == 0 ? end : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static int indexOf(byte[] payload, byte[] target, int from) {
+    outer:
+    for (int i = from; i <= payload.length - target.length; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (payload[i + j] != target[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  // Reads the destination header of an outbound STOMP MESSAGE frame; only the headers are decoded
+  private static String destinationOf(WebSocketMessage<?> message) {
+    if (!(message instanceof TextMessage textMessage)) {
+      return null;
+    }
+    byte[] frame = textMessage.asBytes();
+    int start = skipHeartbeats(frame, 0);
+    int headersEnd = indexOf(frame, HEADERS_END, start);
+    if (headersEnd < 0) {
+      return null;
+    }
+    return headerOf(
+        new String(frame, start, headersEnd - start, StandardCharsets.UTF_8), DESTINATION_HEADER);
+  }
+
+  // Heartbeats are bare end-of-lines, which may precede a frame in a batch
+  private static int skipHeartbeats(byte[] payload, int start) {
+    while (start < payload.length && (payload[start] == '\n' || payload[start] == '\r')) {
+      start++;
+    }
+    return start;
+  }
+
+  private static String headerOf(String headers, String header) {
+    int start = headers.indexOf(header);
+    if (start < 0) {
+      return null;
+    }
+    start += header.length();
+    int end = headers.indexOf('\n', start);
+    return headers.substring(start, end < 0 ? headers.length() : end);
+  }
+}
@@ -0,0 +1,75 @@
+package com.example.soen341_backend.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backplane that relays every subscription and message to an external STOMP broker (RabbitMQ,
+ * ActiveMQ, Artemis...). Each node keeps one shared "system" connection for messages sent from the
+ * application, and one broker connection per client session.
+ *
+ * <p>User destinations that cannot be resolved locally are re-published on {@code
+ * user-destination-broadcast} so the node holding the session can deliver them, and each node
+ * publishes its connected users on {@code user-registry-broadcast}, which turns the {@code
+ * SimpUserRegistry} (see {@link ClusterUserRegistry}) into a cluster-wide view. Local caches are
+ * kept in line across nodes separately, see {@link ClusterChangeStreams}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.websocket.backplane", havingValue = "stomp-relay")
+public class StompRelayBrokerBackplane implements BrokerBackplane {
+
+  @Value("${chat.websocket.relay.host:localhost}")
+  private String relayHost;
+
+  @Value("${chat.websocket.relay.port:61613}")
+  private int relayPort;
+
+  @Value("${chat.websocket.relay.virtual-host:}")
+  private String virtualHost;
+
+  @Value("${chat.websocket.relay.client-login:guest}")
+  private String clientLogin;
+
+  @Value("${chat.websocket.relay.client-passcode:guest}")
+  private String clientPasscode;
+
+  @Value("${chat.websocket.relay.system-login:guest}")
+  private String systemLogin;
+
+  @Value("${chat.websocket.relay.system-passcode:guest}")
+  private String systemPasscode;
+
+  @Value("${chat.websocket.heartbeat-ms:10000}")
+  private long heartbeatMillis;
+
+  @Value("${chat.websocket.relay.user-destination-broadcast:/topic/unresolved-user-destination}")
+  private String userDestinationBroadcast;
+
+  @Value("${chat.websocket.relay.user-registry-broadcast:/topic/simp-user-registry}")
+  private String userRegistryBroadcast;
+
+  @Override
+  public void configure(MessageBrokerRegistry registry) {
+    log.info("Relaying STOMP broker traffic through {}:{}", relayHost, relayPort);
+    var relay =
+        registry
+            .enableStompBrokerRelay(DESTINATION_PREFIXES)
+            .setRelayHost(relayHost)
+            .setRelayPort(relayPort)
+            .setClientLogin(clientLogin)
+            .setClientPasscode(clientPasscode)
+            .setSystemLogin(systemLogin)
+            .setSystemPasscode(systemPasscode)
+            .setSystemHeartbeatSendInterval(heartbeatMillis)
+            .setSystemHeartbeatReceiveInterval(heartbeatMillis)
+            .setUserDestinationBroadcast(userDestinationBroadcast)
+            .setUserRegistryBroadcast(userRegistryBroadcast);
+    if (!virtualHost.isBlank()) {
+      relay.setVirtualHost(virtualHost);
+    }
+  }
+}
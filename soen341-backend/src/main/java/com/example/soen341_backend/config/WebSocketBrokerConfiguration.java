@@ -0,0 +1,81 @@
+package com.example.soen341_backend.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+/**
+ * Replaces {@code @EnableWebSocketMessageBroker} so the STOMP handler can decorate each session
+ * with the configured {@link SlowConsumerPolicy}, its negotiated {@link WireFormat} and optional
+ * {@link FrameCoalescer frame coalescing}, and give the simple broker an {@link
+ * ExactMatchSubscriptionRegistry}. All other broker settings still come from the {@link
+ * WebSocketConfig} configurer.
+ */
+@Configuration
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+  @Value("${chat.websocket.slow-consumer-policy:DISCONNECT}")
+  private SlowConsumerPolicy slowConsumerPolicy;
+
+  @Value("${chat.websocket.slow-consumer.coalesced-flush-ms:250}")
+  private long coalescedFlushMillis;
+
+  @Autowired private WireFormatNegotiator wireFormatNegotiator;
+
+  @Autowired private FrameCoalescer frameCoalescer;
+
+  @Bean
+  @Override
+  public WebSocketHandler subProtocolWebSocketHandler(
+      AbstractSubscribableChannel clientInboundChannel,
+      AbstractSubscribableChannel clientOutboundChannel) {
+    return new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+      @Override
+      protected WebSocketSession decorateSession(WebSocketSession session) {
+        session
+            .getAttributes()
+            .put(
+                WireFormatNegotiator.BINARY_TRANSPORT_ATTRIBUTE,
+                !(session instanceof SockJsSession));
+        WebSocketSession decorated =
+            new SlowConsumerSessionDecorator(
+                new WireFormatSessionDecorator(session, wireFormatNegotiator),
+                getSendTimeLimit(),
+                getSendBufferSizeLimit(),
+                slowConsumerPolicy,
+                clientOutboundChannelExecutor(),
+                messageBrokerTaskScheduler(),
+                coalescedFlushMillis);
+        return frameCoalescer.isEnabled()
+            ? new CoalescingSessionDecorator(decorated, frameCoalescer)
+            : decorated;
+      }
+    };
+  }
+
+  @Bean
+  @Override
+  public AbstractBrokerMessageHandler simpleBrokerMessageHandler(
+      AbstractSubscribableChannel clientInboundChannel,
+      AbstractSubscribableChannel clientOutboundChannel,
+      AbstractSubscribableChannel brokerChannel,
+      UserDestinationResolver userDestinationResolver) {
+    AbstractBrokerMessageHandler handler =
+        super.simpleBrokerMessageHandler(
+            clientInboundChannel, clientOutboundChannel, brokerChannel, userDestinationResolver);
+    if (handler instanceof SimpleBrokerMessageHandler simpleBroker) {
+      simpleBroker.setSubscriptionRegistry(new ExactMatchSubscriptionRegistry());
+    }
+    return handler;
+  }
+}
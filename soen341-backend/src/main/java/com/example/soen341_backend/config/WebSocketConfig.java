@@ -1,11 +1,18 @@
 package com.example.soen341_backend.config;
 
+import com.example.soen341_backend.security.ChatSessionRegistry;
 import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.user.PresenceService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.converter.DefaultContentTypeResolver;
@@ -18,22 +25,110 @@ import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.util.MimeTypeUtils;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+// The broker itself is enabled by WebSocketBrokerConfiguration
+@Slf4j
 @Configuration
-@EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
   private final JwtUtils jwtUtils;
+  private final ChatSessionRegistry chatSessionRegistry;
+  private final BrokerBackplane brokerBackplane;
+  private final PresenceService presenceService;
+  private final ObjectMapper objectMapper;
+  private final WireFormatNegotiator wireFormatNegotiator;
+  private final FrameCoalescer frameCoalescer;
+
+  @Value("${chat.websocket.virtual-threads:false}")
+  private boolean virtualThreads;
+
+  @Value("${chat.websocket.inbound.core-pool-size:8}")
+  private int inboundCorePoolSize;
+
+  @Value("${chat.websocket.inbound.max-pool-size:32}")
+  private int inboundMaxPoolSize;
+
+  @Value("${chat.websocket.inbound.queue-capacity:10000}")
+  private int inboundQueueCapacity;
+
+  @Value("${chat.websocket.outbound.core-pool-size:8}")
+  private int outboundCorePoolSize;
+
+  @Value("${chat.websocket.outbound.max-pool-size:32}")
+  private int outboundMaxPoolSize;
+
+  @Value("${chat.websocket.outbound.queue-capacity:10000}")
+  private int outboundQueueCapacity;
+
+  @Value("${chat.websocket.broker.core-pool-size:4}")
+  private int brokerCorePoolSize;
+
+  @Value("${chat.websocket.broker.max-pool-size:16}")
+  private int brokerMaxPoolSize;
+
+  @Value("${chat.websocket.broker.queue-capacity:10000}")
+  private int brokerQueueCapacity;
+
+  @Value("${chat.websocket.send-time-limit-ms:10000}")
+  private int sendTimeLimitMillis;
+
+  @Value("${chat.websocket.send-buffer-size-limit:524288}")
+  private int sendBufferSizeLimit;
 
   @Override
   public void configureMessageBroker(MessageBrokerRegistry registry) {
-    registry.enableSimpleBroker("/topic", "/user");
+    brokerBackplane.configure(registry);
     registry.setApplicationDestinationPrefixes("/app");
     registry.setUserDestinationPrefix("/user");
+    // Frames of one session leave the outbound pool in the order they were published. The session
+    // decorator hands each frame off without blocking, so the backlog builds up in its bounded
+    // queue, where the send limits below apply, not in the ordered publish queue.
+    registry.setPreservePublishOrder(true);
+
+    if (!useVirtualThreads(registry.configureBrokerChannel(), "ws-broker-")) {
+      registry
+          .configureBrokerChannel()
+          .taskExecutor()
+          .corePoolSize(brokerCorePoolSize)
+          .maxPoolSize(brokerMaxPoolSize)
+          .queueCapacity(brokerQueueCapacity);
+    }
+  }
+
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+    // Limits at which a session counts as a slow consumer, see SlowConsumerPolicy
+    registration.setSendTimeLimit(sendTimeLimitMillis).setSendBufferSizeLimit(sendBufferSizeLimit);
+  }
+
+  @Override
+  public void configureClientOutboundChannel(ChannelRegistration registration) {
+    if (!useVirtualThreads(registration, "ws-outbound-")) {
+      registration
+          .taskExecutor()
+          .corePoolSize(outboundCorePoolSize)
+          .maxPoolSize(outboundMaxPoolSize)
+          .queueCapacity(outboundQueueCapacity);
+    }
+    registration.interceptors(wireFormatNegotiator);
+  }
+
+  // Virtual threads need JDK 21, older runtimes keep the bounded pools
+  private boolean useVirtualThreads(ChannelRegistration registration, String threadNamePrefix) {
+    if (!virtualThreads) {
+      return false;
+    }
+    try {
+      registration.executor(new VirtualThreadTaskExecutor(threadNamePrefix));
+      return true;
+    } catch (UnsupportedOperationException e) {
+      log.warn("Virtual threads are not supported on this JDK, using a thread pool instead");
+      return false;
+    }
   }
 
   @Override
@@ -52,15 +147,33 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
 
     MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-    converter.setObjectMapper(new ObjectMapper());
+    // The application mapper, so STOMP payloads encode like REST responses, java.time included
+    converter.setObjectMapper(objectMapper);
     converter.setContentTypeResolver(resolver);
 
     messageConverters.add(converter);
+    // Frames sent with a binary content-type; the JSON converter keeps frames without one
+    for (WireFormat format : WireFormat.values()) {
+      if (format != WireFormat.JSON) {
+        MappingJackson2MessageConverter binary =
+            new MappingJackson2MessageConverter(format.getMimeType());
+        binary.setObjectMapper(objectMapper.copyWith(format.getFactory().copy()));
+        binary.setStrictContentTypeMatch(true);
+        messageConverters.add(binary);
+      }
+    }
     return false;
   }
 
   @Override
   public void configureClientInboundChannel(ChannelRegistration registration) {
+    if (!useVirtualThreads(registration, "ws-inbound-")) {
+      registration
+          .taskExecutor()
+          .corePoolSize(inboundCorePoolSize)
+          .maxPoolSize(inboundMaxPoolSize)
+          .queueCapacity(inboundQueueCapacity);
+    }
     registration.interceptors(
         new ChannelInterceptor() {
           @Override
@@ -69,20 +182,38 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
 
             assert accessor != null;
+            if (accessor.getSessionId() != null) {
+              // Any frame, heartbeats included, shows the session is still alive
+              presenceService.touch(accessor.getSessionId());
+            }
             if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+              Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+              wireFormatNegotiator.connected(
+                  accessor.getSessionId(),
+                  accessor.getFirstNativeHeader("accept"),
+                  sessionAttributes != null
+                      && Boolean.TRUE.equals(
+                          sessionAttributes.get(WireFormatNegotiator.BINARY_TRANSPORT_ATTRIBUTE)));
+              frameCoalescer.connected(
+                  sessionAttributes, accessor.getFirstNativeHeader("coalesce"));
               // Extract JWT from the headers during connection
               List<String> authorization = accessor.getNativeHeader("Authorization");
               if (authorization != null && !authorization.isEmpty()) {
                 String bearerToken = authorization.get(0);
                 if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
                   String token = bearerToken.substring(7);
-                  if (jwtUtils.validateToken(token)) {
-                    String username = jwtUtils.extractUsername(token);
-                    // Store the username in session attributes to access later
-                    accessor.setUser(() -> username);
-                    Objects.requireNonNull(accessor.getSessionAttributes())
-                        .put("username", username);
-                  }
+                  // Verify the token once and resolve the full identity, pinning it to the
+                  // session so message handlers never have to look the sender up again
+                  jwtUtils
+                      .verify(token)
+                      .map(Claims::getSubject)
+                      .flatMap(chatSessionRegistry::connect)
+                      .ifPresent(
+                          principal -> {
+                            accessor.setUser(principal);
+                            Objects.requireNonNull(accessor.getSessionAttributes())
+                                .put("username", principal.getUsername());
+                          });
                 }
               }
             }
@@ -0,0 +1,66 @@
+package com.example.soen341_backend.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.Optional;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Encodings a STOMP session can exchange payloads in. The binary formats carry the same data model
+ * as JSON, field names and property order included, so a payload has the same schema in every
+ * format and clients decode it with any generic CBOR or Smile reader.
+ */
+public enum WireFormat {
+  JSON(MimeTypeUtils.APPLICATION_JSON, new JsonFactory()),
+  CBOR(new MimeType("application", "cbor"), new CBORFactory()),
+  SMILE(new MimeType("application", "x-jackson-smile"), new SmileFactory());
+
+  private final MimeType mimeType;
+  private final JsonFactory factory;
+
+  WireFormat(MimeType mimeType, JsonFactory factory) {
+    this.mimeType = mimeType;
+    this.factory = factory;
+  }
+
+  public MimeType getMimeType() {
+    return mimeType;
+  }
+
+  public JsonFactory getFactory() {
+    return factory;
+  }
+
+  public static Optional<WireFormat> of(MimeType mimeType) {
+    for (WireFormat format : values()) {
+      if (format.mimeType.equalsTypeAndSubtype(mimeType)) {
+        return Optional.of(format);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Picks the first supported format of an {@code accept} header such as "application/cbor,
+   * application/json". Missing, malformed or unsupported lists fall back to JSON.
+   */
+  public static WireFormat negotiate(String accept) {
+    if (accept == null || accept.isBlank()) {
+      return JSON;
+    }
+    try {
+      for (MimeType mimeType : MimeTypeUtils.parseMimeTypes(accept)) {
+        Optional<WireFormat> format = of(mimeType);
+        if (format.isPresent()) {
+          return format.get();
+        }
+      }
+    } catch (InvalidMimeTypeException e) {
+      // Fall through to JSON
+    }
+    return JSON;
+  }
+}
@@ -0,0 +1,164 @@
+package com.example.soen341_backend.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Lets each STOMP session choose the encoding of the frames it receives.
+ *
+ * <p>A client lists the formats it accepts in an {@code accept} header on its CONNECT frame, e.g.
+ * "application/cbor, application/json", and every MESSAGE frame it receives then carries the first
+ * supported one in its {@code content-type}. Frames a client sends are decoded according to their
+ * own {@code content-type}, see {@link WebSocketConfig#configureMessageConverters}.
+ *
+ * <p>SockJS only carries text, so binary formats need a plain WebSocket connection, e.g. to
+ * "/ws/websocket"; sessions on a SockJS transport stay on JSON whatever they ask for. Frames of
+ * binary sessions are sent as binary WebSocket messages by {@link WireFormatSessionDecorator}.
+ *
+ * <p>Payloads still leave the application as JSON, encoded once per fan-out. This interceptor on
+ * the client outbound channel transcodes them for binary sessions as a token stream, without data
+ * binding, and caches the result by payload identity: a broadcast to many binary sessions is
+ * transcoded once per format, not once per session.
+ */
+@Slf4j
+@Component
+public class WireFormatNegotiator implements ChannelInterceptor {
+
+  /** session id -> negotiated format, for sessions that did not settle on JSON */
+  private final Map<String, WireFormat> formatsBySessionId = new ConcurrentHashMap<>();
+
+  /** JSON payload -> transcoded payload, compared by identity */
+  private final Map<WireFormat, Cache<byte[], byte[]>> transcoded = new EnumMap<>(WireFormat.class);
+
+  public WireFormatNegotiator(
+      MeterRegistry meterRegistry,
+      @Value("${chat.websocket.wire-format.cache-max-size:10000}") long maxSize) {
+    for (WireFormat format : WireFormat.values()) {
+      if (format != WireFormat.JSON) {
+        Cache<byte[], byte[]> cache =
+            Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(30))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(
+            meterRegistry, cache, "wireFormat." + format.name().toLowerCase());
+        transcoded.put(format, cache);
+      }
+    }
+  }
+
+  /** Session attribute telling whether the transport of a session can carry binary messages. */
+  public static final String BINARY_TRANSPORT_ATTRIBUTE = "wireFormat.binaryTransport";
+
+  /**
+   * Records the format a session negotiated with the {@code accept} header of its CONNECT.
+   *
+   * @param binaryTransport false for transports that only carry text, which always get JSON.
+   */
+  public WireFormat connected(String sessionId, String accept, boolean binaryTransport) {
+    WireFormat format = binaryTransport ? WireFormat.negotiate(accept) : WireFormat.JSON;
+    if (format == WireFormat.JSON) {
+      formatsBySessionId.remove(sessionId);
+    } else {
+      formatsBySessionId.put(sessionId, format);
+    }
+    return format;
+  }
+
+  public WireFormat formatOf(String sessionId) {
+    return formatsBySessionId.getOrDefault(sessionId, WireFormat.JSON);
+  }
+
+  @EventListener
+  public void onSessionDisconnect(SessionDisconnectEvent event) {
+    formatsBySessionId.remove(event.getSessionId());
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    MessageHeaders headers = message.getHeaders();
+    String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+    if (sessionId == null
+        || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+        || !(message.getPayload() instanceof byte[] json)) {
+      return message;
+    }
+    WireFormat format = formatOf(sessionId);
+    MimeType contentType = contentTypeOf(headers);
+    if (format == WireFormat.JSON
+        || contentType == null
+        || WireFormat.of(contentType).orElse(null) != WireFormat.JSON) {
+      return message;
+    }
+
+    byte[] payload;
+    try {
+      payload = transcoded.get(format).get(json, key -> transcode(key, format));
+    } catch (UncheckedIOException e) {
+      // Better a frame the client may not decode than a lost one
+      log.warn("Transcoding a frame to {} failed: {}", format, e.getMessage());
+      return message;
+    }
+    // A copy of the headers, the original message may be shared
+    SimpMessageHeaderAccessor accessor =
+        MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class) != null
+            ? StompHeaderAccessor.wrap(message)
+            : SimpMessageHeaderAccessor.wrap(message);
+    accessor.setContentType(format.getMimeType());
+    if (accessor.getFirstNativeHeader("content-type") != null) {
+      // Frames relayed from an external broker carry their own STOMP header
+      accessor.setNativeHeader("content-type", format.getMimeType().toString());
+    }
+    return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+  }
+
+  private static MimeType contentTypeOf(MessageHeaders headers) {
+    Object value = headers.get(MessageHeaders.CONTENT_TYPE);
+    if (value instanceof MimeType mimeType) {
+      return mimeType;
+    }
+    return value instanceof String text ? MimeTypeUtils.parseMimeType(text) : null;
+  }
+
+  private static byte[] transcode(byte[] json, WireFormat format) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+    try (JsonParser parser = WireFormat.JSON.getFactory().createParser(json);
+        JsonGenerator generator = format.getFactory().createGenerator(out)) {
+      while (parser.nextToken() != null) {
+        generator.copyCurrentEvent(parser);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
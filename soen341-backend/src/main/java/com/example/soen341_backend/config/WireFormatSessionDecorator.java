@@ -0,0 +1,33 @@
+package com.example.soen341_backend.config;
+
+import java.io.IOException;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+/**
+ * Sends the frames of a session that negotiated a binary {@link WireFormat} as binary WebSocket
+ * messages, since a CBOR or Smile body is not valid text. Frames of JSON sessions pass through.
+ */
+class WireFormatSessionDecorator extends WebSocketSessionDecorator {
+
+  private final WireFormatNegotiator wireFormatNegotiator;
+
+  WireFormatSessionDecorator(WebSocketSession session, WireFormatNegotiator wireFormatNegotiator) {
+    super(session);
+    this.wireFormatNegotiator = wireFormatNegotiator;
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    if (message instanceof TextMessage text
+        && wireFormatNegotiator.formatOf(getId()) != WireFormat.JSON) {
+      // The STOMP encoder builds text messages from bytes, asBytes() hands them back uncopied
+      super.sendMessage(new BinaryMessage(text.asBytes()));
+      return;
+    }
+    super.sendMessage(message);
+  }
+}
@@ -0,0 +1,11 @@
+package com.example.soen341_backend.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNAUTHORIZED)
+public class InvalidTokenException extends RuntimeException {
+  public InvalidTokenException(String message) {
+    super(message);
+  }
+}
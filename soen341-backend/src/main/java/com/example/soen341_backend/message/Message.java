@@ -3,6 +3,7 @@ package com.example.soen341_backend.message;
 import java.time.Instant;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Getter
@@ -11,15 +12,39 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @NoArgsConstructor
 @Builder
 @Document(collection = "messages")
+@CompoundIndex(name = "channel_history", def = "{'channelId': 1, 'timestamp': 1, '_id': 1}")
+@CompoundIndex(
+    name = "conversation_history",
+    def = "{'conversationKey': 1, 'timestamp': 1, '_id': 1}",
+    sparse = true)
+// channelId as a suffix: one search filters hits to a set of channels on the index keys, which a
+// channelId prefix cannot do since it only takes an equality match
+@CompoundIndex(name = "text_channel", def = "{'content': 'text', 'channelId': 1}")
 public class Message {
 
   @Id private String id;
 
+  // Full-text indexed together with its channel (text_channel), kept up to date by Mongo on every
+  // write
   private String content;
+
   private String senderId;
   private String senderUsername;
   private String channelId;
   private Instant timestamp;
   private boolean isDirectMessage;
   private String receiverId;
+
+  // Order-independent key of the two DM participants, null for channel messages
+  private String conversationKey;
+
+  /**
+   * Builds the normalized conversation key shared by every direct message between two users,
+   * regardless of which of them sent it.
+   */
+  public static String conversationKey(String userId, String otherUserId) {
+    return userId.compareTo(otherUserId) <= 0
+        ? userId + ":" + otherUserId
+        : otherUserId + ":" + userId;
+  }
 }
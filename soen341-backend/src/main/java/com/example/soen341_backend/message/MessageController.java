@@ -1,8 +1,9 @@
 package com.example.soen341_backend.message;
 
 import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
 import jakarta.servlet.http.HttpServletRequest;
-import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,33 +17,57 @@ public class MessageController {
 
   private final MessageService messageService;
   private final JwtUtils jwtUtils;
+  private final UserService userService;
 
   @GetMapping("/{id}")
   public Message getMessageById(@PathVariable String id) {
     return messageService.getMessageById(id);
   }
 
+  // Ranked search over the caller's channels and direct messages, or over one of them
+  @GetMapping("/search")
+  public MessageSearchPage searchMessages(
+      @RequestParam String q,
+      @RequestParam(required = false) String channelId,
+      @RequestParam(defaultValue = "0") int offset,
+      @RequestParam(defaultValue = "" + MessageService.DEFAULT_SEARCH_PAGE_SIZE) int limit,
+      HttpServletRequest request) {
+    // Extract userId from JWT token
+    String username = getUserUsernameFromRequest(request);
+    return messageService.searchMessages(username, q, channelId, offset, limit);
+  }
+
   @GetMapping("/channel/{channelId}")
-  public List<Message> getChannelMessages(
-      @PathVariable String channelId, HttpServletRequest request) {
+  public MessagePage getChannelMessages(
+      @PathVariable String channelId,
+      @RequestParam(required = false) String before,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "" + MessageService.DEFAULT_PAGE_SIZE) int limit,
+      HttpServletRequest request) {
     // Extract userId from JWT token
     String username = getUserUsernameFromRequest(request);
-    return messageService.getChannelMessages(channelId, username);
+    return messageService.getChannelMessages(channelId, username, before, after, limit);
   }
 
   @GetMapping("/direct-messages")
-  public List<Message> getDirectMessages(
-      @RequestParam String otherUserId, HttpServletRequest request) {
+  public MessagePage getDirectMessages(
+      @RequestParam String otherUserId,
+      @RequestParam(required = false) String before,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "" + MessageService.DEFAULT_PAGE_SIZE) int limit,
+      HttpServletRequest request) {
     // Extract userId from JWT token
     String username = getUserUsernameFromRequest(request);
-    return messageService.getDirectMessages(username, otherUserId);
+    return messageService.getDirectMessages(username, otherUserId, before, after, limit);
   }
 
   @PostMapping("/channel")
   public Message sendChannelMessage(@RequestBody Message message, HttpServletRequest request) {
     // Extract userId from JWT token
     String username = getUserUsernameFromRequest(request);
-    return messageService.sendChannelMessage(message, username);
+    User sender = userService.getUserByUsername(username);
+    message.setSenderUsername(username);
+    return messageService.sendChannelMessage(message, sender.getId());
   }
 
   @PostMapping("/dm")
@@ -50,7 +75,9 @@ public class MessageController {
       @RequestBody Message message, @RequestParam String recipientId, HttpServletRequest request) {
     // Extract senderId from JWT token
     String senderUsername = getUserUsernameFromRequest(request);
-    return messageService.sendDirectMessage(message, senderUsername, recipientId);
+    User sender = userService.getUserByUsername(senderUsername);
+    message.setSenderUsername(senderUsername);
+    return messageService.sendDirectMessage(message, sender.getId(), recipientId);
   }
 
   @DeleteMapping("/{messageId}")
@@ -0,0 +1,55 @@
+package com.example.soen341_backend.message;
+
+import com.example.soen341_backend.exceptions.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position inside a conversation history. A cursor points at one message through its
+ * (timestamp, id) pair, which is the same order the history indexes are sorted on, so a page can be
+ * resumed with a range scan instead of a skip.
+ *
+ * <p>Clients receive cursors as URL-safe strings and must treat them as opaque.
+ */
+public record MessageCursor(Instant timestamp, String id) {
+
+  private static final char SEPARATOR = ':';
+
+  public static MessageCursor of(Message message) {
+    // Legacy rows saved without a timestamp sort first, so anchor them at the epoch
+    Instant timestamp = message.getTimestamp() != null ? message.getTimestamp() : Instant.EPOCH;
+    return new MessageCursor(timestamp, message.getId());
+  }
+
+  public String encode() {
+    String raw = timestamp.toEpochMilli() + String.valueOf(SEPARATOR) + id;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor previously produced by {@link #encode()}.
+   *
+   * @param token the opaque cursor string, may be {@code null}.
+   * @return the decoded cursor, or {@code null} if no token was given.
+   * @throws BadRequestException if the token is malformed.
+   */
+  public static MessageCursor decode(String token) {
+    if (token == null || token.isBlank()) {
+      return null;
+    }
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      int separator = raw.indexOf(SEPARATOR);
+      if (separator <= 0 || separator == raw.length() - 1) {
+        throw new BadRequestException("Invalid message cursor");
+      }
+      Instant timestamp = Instant.ofEpochMilli(Long.parseLong(raw.substring(0, separator)));
+      return new MessageCursor(timestamp, raw.substring(separator + 1));
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid message cursor");
+    }
+  }
+}
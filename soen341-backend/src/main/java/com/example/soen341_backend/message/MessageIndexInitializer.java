@@ -0,0 +1,148 @@
+package com.example.soen341_backend.message;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes sure the history indexes declared on {@link Message} exist and backfills the fields they
+ * rely on for messages written before those fields were introduced.
+ *
+ * <p>Runs once on a background thread after startup so a slow or unreachable database never delays
+ * the application from serving requests.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageIndexInitializer {
+
+  private static final int BACKFILL_BATCH_SIZE = 1000;
+  private static final int OBJECT_ID_TYPE = 7;
+  private static final String TEXT_INDEX = "text_channel";
+
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+
+  @Value("${chat.messages.index-init.enabled:true}")
+  private boolean enabled;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!enabled) {
+      return;
+    }
+    Thread worker = new Thread(this::run, "message-index-init");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  void run() {
+    try {
+      ensureIndexes();
+      long conversationKeys = backfillConversationKeys();
+      long timestamps = backfillTimestamps();
+      log.info(
+          "Message index check complete, backfilled {} conversation keys and {} timestamps",
+          conversationKeys,
+          timestamps);
+    } catch (Exception e) {
+      log.error("Message index check failed: {}", e.getMessage());
+    }
+  }
+
+  void ensureIndexes() {
+    IndexOperations indexOps = mongoTemplate.indexOps(Message.class);
+    // A collection holds a single text index, so any earlier one (content only, or channel_text
+    // with channelId as prefix) has to go first
+    for (IndexInfo index : indexOps.getIndexInfo()) {
+      boolean text = index.getIndexFields().stream().anyMatch(IndexField::isText);
+      if (text && !TEXT_INDEX.equals(index.getName())) {
+        log.info("Replacing text index {} with {}", index.getName(), TEXT_INDEX);
+        indexOps.dropIndex(index.getName());
+      }
+    }
+    new MongoPersistentEntityIndexResolver(mappingContext)
+        .resolveIndexFor(Message.class)
+        .forEach(indexOps::ensureIndex);
+
+    Set<String> present =
+        indexOps.getIndexInfo().stream().map(IndexInfo::getName).collect(Collectors.toSet());
+    for (String expected : List.of("channel_history", "conversation_history", TEXT_INDEX)) {
+      if (!present.contains(expected)) {
+        log.warn("Expected index {} is missing on the messages collection", expected);
+      }
+    }
+  }
+
+  long backfillConversationKeys() {
+    Query pending =
+        Query.query(
+                Criteria.where("isDirectMessage")
+                    .is(true)
+                    .and("conversationKey")
+                    .exists(false)
+                    .and("senderId")
+                    .ne(null)
+                    .and("receiverId")
+                    .ne(null))
+            .with(Sort.by("id"))
+            .limit(BACKFILL_BATCH_SIZE);
+    pending.fields().include("senderId", "receiverId");
+
+    long updated = 0;
+    List<Message> batch;
+    while (!(batch = mongoTemplate.find(pending, Message.class)).isEmpty()) {
+      BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+      for (Message message : batch) {
+        bulk.updateOne(
+            Query.query(Criteria.where("id").is(message.getId())),
+            Update.update(
+                "conversationKey",
+                Message.conversationKey(message.getSenderId(), message.getReceiverId())));
+      }
+      updated += bulk.execute().getModifiedCount();
+    }
+    return updated;
+  }
+
+  long backfillTimestamps() {
+    // The ObjectId creation time is the best available approximation of when the message was sent
+    Query pending =
+        Query.query(Criteria.where("timestamp").is(null).and("_id").type(OBJECT_ID_TYPE))
+            .with(Sort.by("_id"))
+            .limit(BACKFILL_BATCH_SIZE);
+    pending.fields().include("_id");
+
+    long updated = 0;
+    List<Document> batch;
+    while (!(batch = mongoTemplate.find(pending, Document.class, "messages")).isEmpty()) {
+      BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+      for (Document message : batch) {
+        ObjectId id = message.getObjectId("_id");
+        bulk.updateOne(
+            Query.query(Criteria.where("_id").is(id)), Update.update("timestamp", id.getDate()));
+      }
+      updated += bulk.execute().getModifiedCount();
+    }
+    return updated;
+  }
+}
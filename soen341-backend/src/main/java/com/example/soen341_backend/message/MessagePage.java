@@ -0,0 +1,21 @@
+package com.example.soen341_backend.message;
+
+import java.util.List;
+
+/**
+ * One window of a conversation history, always in ascending timestamp order.
+ *
+ * @param messages the messages in this window, oldest first.
+ * @param olderCursor pass as {@code before} to load the window preceding this one, or {@code null}
+ *     if the window is empty.
+ * @param newerCursor pass as {@code after} to load the window following this one, or {@code null}
+ *     if the window is empty.
+ * @param hasOlder whether older messages exist before this window.
+ * @param hasNewer whether newer messages exist after this window.
+ */
+public record MessagePage(
+    List<Message> messages,
+    String olderCursor,
+    String newerCursor,
+    boolean hasOlder,
+    boolean hasNewer) {}
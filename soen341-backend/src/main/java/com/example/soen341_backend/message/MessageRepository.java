@@ -5,7 +5,8 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface MessageRepository extends MongoRepository<Message, String> {
+public interface MessageRepository
+    extends MongoRepository<Message, String>, MessageRepositoryCustom {
 
   List<Message> findByReceiverId(String receiverId);
 
@@ -14,8 +15,4 @@ public interface MessageRepository extends MongoRepository<Message, String> {
   List<Message> findByChannelId(String channelId);
 
   List<Message> findAllByChannelIdOrderByTimestampAsc(String channelId);
-
-  List<Message>
-      findByDirectMessageTrueAndSenderIdAndReceiverIdOrDirectMessageTrueAndSenderIdAndReceiverIdOrderByTimestampAsc(
-          String senderId1, String receiverId1, String senderId2, String receiverId2);
 }
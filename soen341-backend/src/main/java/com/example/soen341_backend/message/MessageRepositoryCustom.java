@@ -0,0 +1,40 @@
+package com.example.soen341_backend.message;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+public interface MessageRepositoryCustom {
+
+  /**
+   * Loads up to {@code limit} messages matching {@code scope} using keyset pagination on
+   * (timestamp, id). At most one of {@code before} and {@code after} may be set; when neither is
+   * set the most recent messages are returned.
+   *
+   * @return the matching messages, oldest first.
+   */
+  List<Message> findWindow(Criteria scope, MessageCursor before, MessageCursor after, int limit);
+
+  /**
+   * Loads the most recent message of each of the given channels in a single aggregation. Channels
+   * without messages are absent from the result.
+   */
+  List<Message> findLatestPerChannel(Collection<String> channelIds);
+
+  /**
+   * Counts, per channel, the messages sent after {@code since} by anyone but {@code
+   * excludedSenderId}. Channels without such messages are absent from the result.
+   */
+  Map<String, Long> countPerChannelSince(
+      Collection<String> channelIds, Instant since, String excludedSenderId);
+
+  /**
+   * Finds messages of the given channels whose content matches {@code terms}, using the text index.
+   *
+   * @return up to {@code limit} hits starting at {@code offset}, best match first and newest first
+   *     among equal scores.
+   */
+  List<MessageSearchHit> search(String terms, Collection<String> channelIds, int offset, int limit);
+}
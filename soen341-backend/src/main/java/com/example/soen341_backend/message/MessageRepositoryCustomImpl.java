@@ -0,0 +1,135 @@
+package com.example.soen341_backend.message;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.replaceRoot;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+
+@RequiredArgsConstructor
+public class MessageRepositoryCustomImpl implements MessageRepositoryCustom {
+
+  private final MongoTemplate mongoTemplate;
+
+  @Override
+  public List<Message> findWindow(
+      Criteria scope, MessageCursor before, MessageCursor after, int limit) {
+    boolean forward = after != null;
+    Sort.Direction direction = forward ? Sort.Direction.ASC : Sort.Direction.DESC;
+
+    Criteria criteria = scope;
+    if (before != null) {
+      criteria =
+          new Criteria()
+              .andOperator(
+                  scope,
+                  new Criteria()
+                      .orOperator(
+                          Criteria.where("timestamp").lt(before.timestamp()),
+                          Criteria.where("timestamp")
+                              .is(before.timestamp())
+                              .and("id")
+                              .lt(before.id())));
+    } else if (after != null) {
+      criteria =
+          new Criteria()
+              .andOperator(
+                  scope,
+                  new Criteria()
+                      .orOperator(
+                          Criteria.where("timestamp").gt(after.timestamp()),
+                          Criteria.where("timestamp")
+                              .is(after.timestamp())
+                              .and("id")
+                              .gt(after.id())));
+    }
+
+    Query query = new Query(criteria);
+    query.with(Sort.by(direction, "timestamp", "id")).limit(limit);
+
+    List<Message> messages = mongoTemplate.find(query, Message.class);
+    if (!forward) {
+      // Scanned newest-first to hit the index tail, callers always get oldest-first
+      Collections.reverse(messages);
+    }
+    return messages;
+  }
+
+  @Override
+  public List<Message> findLatestPerChannel(Collection<String> channelIds) {
+    if (channelIds.isEmpty()) {
+      return List.of();
+    }
+    // Every key descending walks the ascending channel_history index backwards, so there is no
+    // in-memory sort and each group's first document is its newest
+    TypedAggregation<Message> aggregation =
+        newAggregation(
+            Message.class,
+            match(Criteria.where("channelId").in(channelIds)),
+            sort(Sort.by(Sort.Direction.DESC, "channelId", "timestamp", "id")),
+            group("channelId").first(Aggregation.ROOT).as("message"),
+            replaceRoot("message"));
+    return mongoTemplate.aggregate(aggregation, Message.class).getMappedResults();
+  }
+
+  @Override
+  public Map<String, Long> countPerChannelSince(
+      Collection<String> channelIds, Instant since, String excludedSenderId) {
+    if (channelIds.isEmpty()) {
+      return Map.of();
+    }
+    TypedAggregation<Message> aggregation =
+        newAggregation(
+            Message.class,
+            match(
+                Criteria.where("channelId")
+                    .in(channelIds)
+                    .and("timestamp")
+                    .gt(since)
+                    .and("senderId")
+                    .ne(excludedSenderId)),
+            group("channelId").count().as("count"));
+
+    Map<String, Long> counts = new HashMap<>();
+    for (Document result : mongoTemplate.aggregate(aggregation, Document.class)) {
+      counts.put(result.getString("_id"), ((Number) result.get("count")).longValue());
+    }
+    return counts;
+  }
+
+  @Override
+  public List<MessageSearchHit> search(
+      String terms, Collection<String> channelIds, int offset, int limit) {
+    if (channelIds.isEmpty()) {
+      return List.of();
+    }
+    // One query: text_channel filters the hits to these channels on its index keys, and the
+    // server keeps only the top offset + limit of them while sorting
+    Query query =
+        TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(terms))
+            .sortByScore()
+            .addCriteria(Criteria.where("channelId").in(channelIds))
+            .with(Sort.by(Sort.Direction.DESC, "timestamp"))
+            .skip(offset)
+            .limit(limit);
+    query.fields().include("content", "senderId", "senderUsername", "channelId", "timestamp");
+    return mongoTemplate.find(query, MessageSearchHit.class, "messages");
+  }
+}
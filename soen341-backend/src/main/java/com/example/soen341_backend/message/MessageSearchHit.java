@@ -0,0 +1,14 @@
+package com.example.soen341_backend.message;
+
+import java.time.Instant;
+import org.springframework.data.mongodb.core.mapping.TextScore;
+
+/** A message matching a search, with its relevance as computed by the text index. */
+public record MessageSearchHit(
+    String id,
+    String content,
+    String senderId,
+    String senderUsername,
+    String channelId,
+    Instant timestamp,
+    @TextScore Float score) {}
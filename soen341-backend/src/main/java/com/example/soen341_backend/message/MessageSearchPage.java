@@ -0,0 +1,9 @@
+package com.example.soen341_backend.message;
+
+import java.util.List;
+
+/**
+ * One page of search results, best match first. {@code nextOffset} is the offset of the following
+ * page, or null when there are no more results.
+ */
+public record MessageSearchPage(List<MessageSearchHit> hits, Integer nextOffset) {}
@@ -1,80 +1,224 @@
 package com.example.soen341_backend.message;
 
-import com.example.soen341_backend.channel.Channel;
+import com.example.soen341_backend.channel.ChannelMembership;
 import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.channel.ChannelSummary;
+import com.example.soen341_backend.exceptions.BadRequestException;
 import com.example.soen341_backend.exceptions.ResourceNotFoundException;
 import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.payload.MessageDeletedEvent;
+import com.example.soen341_backend.payload.MessageUpdatedEvent;
 import com.example.soen341_backend.user.User;
 import com.example.soen341_backend.user.UserRepository;
 import com.example.soen341_backend.user.UserService;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import lombok.AllArgsConstructor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
 @Service
 @AllArgsConstructor
 public class MessageService {
 
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  public static final int MAX_PAGE_SIZE = 200;
+  public static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+  public static final int MAX_SEARCH_OFFSET = 1000;
+
   private final MessageRepository messageRepository;
   private final ChannelService channelService;
   private final UserService userService;
-  private final SimpMessagingTemplate messagingTemplate;
+  private final FanoutSender fanoutSender;
   private final UserRepository userRepository;
+  private final MessageWriteBehindQueue messageWriteBehindQueue;
 
   public Message getMessageById(String id) {
+    // A message that was just sent may still be buffered
+    messageWriteBehindQueue.awaitPersisted(id);
     return messageRepository
         .findById(id)
         .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + id));
   }
 
-  public List<Message> getChannelMessages(String channelId, String username) {
+  public MessagePage getChannelMessages(
+      String channelId, String username, String before, String after, int limit) {
     /**
-     * Retrieves a list of messages for a specified channel.
+     * Retrieves one window of messages for a specified channel.
      *
      * @param channelId the unique identifier of the channel (type: {@link String}).
      * @param username the username of the requesting user (type: {@link String}).
+     * @param before opaque cursor; when set, returns the messages preceding it (type: {@link
+     *     String}).
+     * @param after opaque cursor; when set, returns the messages following it (type: {@link
+     *     String}).
+     * @param limit the maximum number of messages to return (type: int).
      *     <p>Validates whether the user is a member of the specified channel before fetching
-     *     messages. If the user is not a member, an {@link UnauthorizedException} is thrown.
-     * @return a list of messages ordered by timestamp in ascending order (type: {@link
-     *     List<Message>}).
+     *     messages. If the user is not a member, an {@link UnauthorizedException} is thrown. When
+     *     neither cursor is given, the latest messages are returned.
+     * @return the requested window, ordered by timestamp in ascending order (type: {@link
+     *     MessagePage}).
      */
 
     // Verify user is a member of the channel
-    Channel channel = channelService.getChannelById(channelId);
+    ChannelMembership membership = channelService.getMembership(channelId);
     Optional<User> user = userRepository.findByUsername(username);
 
-    if (user.isPresent() && !channel.getMembers().contains(user.get().getId())) {
+    if (user.isPresent() && !membership.isMember(user.get().getId())) {
       throw new UnauthorizedException("You don't have access to this channel");
     }
 
-    return messageRepository.findAllByChannelIdOrderByTimestampAsc(channelId);
+    return findPage(Criteria.where("channelId").is(channelId), before, after, limit);
   }
 
-  public List<Message> getDirectMessages(String username, String otherUserId) {
+  public MessagePage getDirectMessages(
+      String username, String otherUserId, String before, String after, int limit) {
     /**
-     * Retrieves a list of direct messages between the requesting user and another user.
+     * Retrieves one window of direct messages between the requesting user and another user.
      *
      * @param username the username of the requesting user (type: {@link String}).
      * @param otherUserId the unique identifier of the other user in the conversation (type: {@link
      *     String}).
+     * @param before opaque cursor; when set, returns the messages preceding it (type: {@link
+     *     String}).
+     * @param after opaque cursor; when set, returns the messages following it (type: {@link
+     *     String}).
+     * @param limit the maximum number of messages to return (type: int).
      *     <p>Validates that the requesting user exists before fetching messages. If the user is not
      *     found, a {@link ResourceNotFoundException} is thrown.
-     * @return a list of direct messages exchanged between the two users, ordered by timestamp in
-     *     ascending order (type: {@link List<Message>}).
+     * @return the requested window of direct messages exchanged between the two users, ordered by
+     *     timestamp in ascending order (type: {@link MessagePage}).
      */
     Optional<User> user = userRepository.findByUsername(username);
 
     if (user.isEmpty()) {
       throw new ResourceNotFoundException("User not found with username: " + username);
     }
-    return messageRepository
-        .findByDirectMessageTrueAndSenderIdAndReceiverIdOrDirectMessageTrueAndSenderIdAndReceiverIdOrderByTimestampAsc(
-            user.get().getId(), otherUserId, otherUserId, user.get().getId());
+
+    String conversationKey = Message.conversationKey(user.get().getId(), otherUserId);
+    return findPage(Criteria.where("conversationKey").is(conversationKey), before, after, limit);
+  }
+
+  private MessagePage findPage(Criteria scope, String before, String after, int limit) {
+    if (before != null && after != null) {
+      throw new BadRequestException("Only one of 'before' and 'after' may be given");
+    }
+    if (limit < 1) {
+      throw new BadRequestException("Page limit must be positive");
+    }
+    int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+    MessageCursor beforeCursor = MessageCursor.decode(before);
+    MessageCursor afterCursor = MessageCursor.decode(after);
+
+    // Fetch one extra row to learn whether the history continues past this window
+    List<Message> window =
+        messageRepository.findWindow(scope, beforeCursor, afterCursor, pageSize + 1);
+    boolean hasMore = window.size() > pageSize;
+    if (hasMore) {
+      window =
+          afterCursor != null
+              ? window.subList(0, pageSize)
+              : window.subList(window.size() - pageSize, window.size());
+    }
+
+    boolean hasOlder = afterCursor != null || hasMore;
+    boolean hasNewer = afterCursor != null ? hasMore : beforeCursor != null;
+
+    if (window.isEmpty()) {
+      return new MessagePage(List.of(), null, null, hasOlder, hasNewer);
+    }
+    return new MessagePage(
+        List.copyOf(window),
+        MessageCursor.of(window.get(0)).encode(),
+        MessageCursor.of(window.get(window.size() - 1)).encode(),
+        hasOlder,
+        hasNewer);
+  }
+
+  public Map<String, Message> getLastMessages(Collection<String> channelIds) {
+    /**
+     * Retrieves the most recent message of each of the given conversations.
+     *
+     * @param channelIds the channel and direct message channel ids (type: {@link Collection}).
+     *     <p>Runs one aggregation for all conversations instead of one history fetch per channel.
+     * @return a {@link Map} from channel id to its latest {@link Message}; conversations without
+     *     messages have no entry.
+     */
+    Map<String, Message> lastMessages = new HashMap<>();
+    for (Message message : messageRepository.findLatestPerChannel(channelIds)) {
+      lastMessages.put(message.getChannelId(), message);
+    }
+    return lastMessages;
+  }
+
+  public Map<String, Long> countUnreadMessages(
+      Collection<String> channelIds, String userId, Instant since) {
+    /**
+     * Counts the messages other users sent to the given conversations after a point in time.
+     *
+     * @param channelIds the channel and direct message channel ids (type: {@link Collection}).
+     * @param userId the reader, whose own messages are never unread (type: {@link String}).
+     * @param since the instant the reader is considered caught up to (type: {@link Instant}).
+     * @return a {@link Map} from channel id to its unread count; conversations without unread
+     *     messages have no entry.
+     */
+    return messageRepository.countPerChannelSince(channelIds, since, userId);
+  }
+
+  public MessageSearchPage searchMessages(
+      String username, String terms, String channelId, int offset, int limit) {
+    /**
+     * Searches the messages of the channels and direct messages a user belongs to.
+     *
+     * @param username the username of the requesting user (type: {@link String}).
+     * @param terms the words to look for; quoted phrases and {@code -excluded} words are supported
+     *     (type: {@link String}).
+     * @param channelId restricts the search to one conversation when set (type: {@link String}).
+     * @param offset the position of the first hit to return (type: int).
+     * @param limit the maximum number of hits to return (type: int).
+     *     <p>Matches go through the text index on the message content and are filtered to the
+     *     conversations the user is a member of, so messages of other channels are never returned.
+     *     Offsets are bounded, deeper results should be reached by refining the terms.
+     * @return the page of hits, best match first (type: {@link MessageSearchPage}).
+     * @throws BadRequestException if the terms are blank or the offset or limit is out of range.
+     * @throws UnauthorizedException if the user is not a member of the given channel.
+     */
+    if (terms == null || terms.isBlank()) {
+      throw new BadRequestException("Search terms must not be empty");
+    }
+    if (offset < 0 || offset > MAX_SEARCH_OFFSET || limit < 1) {
+      throw new BadRequestException(
+          "Offset must be between 0 and " + MAX_SEARCH_OFFSET + " and limit must be positive");
+    }
+    User user = userService.getUserByUsername(username);
+
+    List<String> channelIds;
+    if (channelId != null) {
+      if (!channelService.isMember(channelId, user.getId())) {
+        throw new UnauthorizedException("You don't have access to this channel");
+      }
+      channelIds = List.of(channelId);
+    } else {
+      channelIds =
+          channelService.getUserConversations(user.getId(), user.getChannelIds()).stream()
+              .map(ChannelSummary::id)
+              .toList();
+    }
+
+    // One extra hit tells whether another page exists
+    int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+    List<MessageSearchHit> hits =
+        messageRepository.search(terms.trim(), channelIds, offset, pageSize + 1);
+    if (hits.size() <= pageSize) {
+      return new MessageSearchPage(hits, null);
+    }
+    return new MessageSearchPage(hits.subList(0, pageSize), offset + pageSize);
   }
 
   public Message sendChannelMessage(Message message, String senderId) {
@@ -84,54 +228,45 @@ public class MessageService {
      * @param message the message object containing content, channel ID, and metadata (type: {@link
      *     Message}).
      * @param senderId the unique identifier of the user sending the message (type: {@link String}).
-     *     <p>Validates that the sender exists and is a member of the target channel. If the user is
-     *     not found, a {@link ResourceNotFoundException} is thrown. If the user is not a channel
-     *     member, an {@link UnauthorizedException} is thrown.
-     * @return the saved message object after persistence (type: {@link Message}).
+     *     <p>Validates that the sender is a member of the target channel using the cached channel
+     *     membership. If the channel is not found, a {@link ResourceNotFoundException} is thrown.
+     *     If the user is not a channel member, an {@link UnauthorizedException} is thrown. The
+     *     message is queued for persistence and receives its id and timestamp immediately.
+     * @return the accepted message object (type: {@link Message}).
      */
-    Channel channel = channelService.getChannelById(message.getChannelId());
-
-    User user =
-        userRepository
-            .findById(senderId)
-            .orElseThrow(
-                () -> new ResourceNotFoundException("User not found with username: " + senderId));
-
-    // Verify user is a member of the channel
-    if (!channel.getMembers().contains(user.getId())) {
+    // Verify user is a member of the channel, answered from the membership cache
+    if (!channelService.isMember(message.getChannelId(), senderId)) {
       throw new UnauthorizedException("You don't have access to this channel");
     }
 
-    return messageRepository.save(message);
+    message.setSenderId(senderId);
+    return messageWriteBehindQueue.enqueue(message);
   }
 
-  public Message sendDirectMessage(Message message, String senderUsername, String recipientId) {
+  public Message sendDirectMessage(Message message, String senderId, String recipientId) {
     /**
      * Sends a direct message between two users.
      *
      * @param message the message object containing content and metadata (type: {@link Message}).
-     * @param senderUsername the username of the sender (type: {@link String}).
+     * @param senderId the unique identifier of the sender (type: {@link String}).
      * @param recipientId the unique identifier of the recipient (type: {@link String}).
-     *     <p>Retrieves the sender's user details and gets or creates a direct message channel
-     *     between the users. Updates the message with sender ID, recipient ID, channel ID,
-     *     timestamp, and direct message status before saving.
-     * @return the saved message object after persistence (type: {@link Message}).
+     *     <p>Gets or creates a direct message channel between the users. Updates the message with
+     *     sender ID, recipient ID, channel ID, timestamp, and direct message status before queueing
+     *     it for persistence.
+     * @return the accepted message object (type: {@link Message}).
      */
 
-    // Get users
-    Optional<User> sender = userRepository.findByUsername(senderUsername);
-
-    // Get or create DM channel
-    Channel dmChannel =
-        channelService.getOrCreateDirectMessageChannel(sender.get().getId(), recipientId);
+    // Get or create DM channel, answered from memory once the pair is known
+    String dmChannelId = channelService.getOrCreateDirectMessageChannelId(senderId, recipientId);
 
-    message.setSenderId(sender.get().getId());
+    message.setSenderId(senderId);
     message.setReceiverId(recipientId);
-    message.setChannelId(dmChannel.getId());
+    message.setChannelId(dmChannelId);
     message.setTimestamp(Instant.now());
     message.setDirectMessage(true);
+    message.setConversationKey(Message.conversationKey(senderId, recipientId));
 
-    return messageRepository.save(message);
+    return messageWriteBehindQueue.enqueue(message);
   }
 
   /* TODO: Modify this function to match the new WebSocket implementation  */
@@ -145,29 +280,24 @@ public class MessageService {
 
     // Only message sender or admin can delete a message
     if (!message.getSenderId().equals(user.get().getId())
-        && !userService.isAdmin(user.get().getId(), message.getChannelId())) {
+        && !channelService.getMembership(message.getChannelId()).isAdmin(user.get().getId())) {
       throw new UnauthorizedException("You don't have permission to delete this message");
     }
 
     // Delete from database
     messageRepository.delete(message);
 
-    // Create notification about message deletion
-    Map<String, Object> notification = new HashMap<>();
-    notification.put("type", "Message deleted");
-    notification.put("messageId", messageId);
-    notification.put("deletedBy", user.get().getId());
+    // Notify about the deletion, encoded once for all recipients
+    MessageDeletedEvent notification = new MessageDeletedEvent(messageId, user.get().getId());
 
     // For channel messages, broadcast to the channel
     if (!message.isDirectMessage()) {
-      messagingTemplate.convertAndSend("/topic/channel/" + message.getChannelId(), notification);
+      fanoutSender.send("/topic/channel/" + message.getChannelId(), notification);
     } else {
-
-      messagingTemplate.convertAndSendToUser(
-          message.getSenderId(), "/direct-messages", notification);
-
-      messagingTemplate.convertAndSendToUser(
-          message.getReceiverId(), "/direct-messages", notification);
+      fanoutSender.sendToUsers(
+          List.of(message.getSenderId(), message.getReceiverId()),
+          FanoutSender.DIRECT_MESSAGES_QUEUE,
+          notification);
     }
   }
 
@@ -181,7 +311,9 @@ public class MessageService {
 
     // Only message sender and admin can edit a message
     if (!messageToEdit.getSenderId().equals(user.get().getId())
-        && !userService.isAdmin(user.get().getId(), messageToEdit.getChannelId())) {
+        && !channelService
+            .getMembership(messageToEdit.getChannelId())
+            .isAdmin(user.get().getId())) {
       throw new UnauthorizedException("You don't have permission to edit this message");
     }
 
@@ -190,23 +322,18 @@ public class MessageService {
     // Save the updated message
     Message savedMessage = messageRepository.save(messageToEdit);
 
-    // Create notification about message update
-    Map<String, Object> notification = new HashMap<>();
-    notification.put("type", "Message updated");
-    notification.put("messageId", messageId);
-    notification.put("editedBy", user.get().getId());
-    notification.put("message", savedMessage);
+    // Notify about the update, encoded once for all recipients
+    MessageUpdatedEvent notification =
+        new MessageUpdatedEvent(messageId, user.get().getId(), savedMessage);
 
     // For channel messages, broadcast to the channel
     if (!messageToEdit.isDirectMessage()) {
-      messagingTemplate.convertAndSend(
-          "/topic/channel/" + messageToEdit.getChannelId(), notification);
+      fanoutSender.send("/topic/channel/" + messageToEdit.getChannelId(), notification);
     } else {
-      messagingTemplate.convertAndSendToUser(
-          messageToEdit.getSenderId(), "/direct-messages", notification);
-
-      messagingTemplate.convertAndSendToUser(
-          messageToEdit.getReceiverId(), "/direct-messages", notification);
+      fanoutSender.sendToUsers(
+          List.of(messageToEdit.getSenderId(), messageToEdit.getReceiverId()),
+          FanoutSender.DIRECT_MESSAGES_QUEUE,
+          notification);
     }
 
     return savedMessage;
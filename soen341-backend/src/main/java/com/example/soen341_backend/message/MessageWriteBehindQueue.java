@@ -0,0 +1,310 @@
+package com.example.soen341_backend.message;
+
+import com.example.soen341_backend.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind buffer for chat messages. Accepted messages get their id and timestamp immediately,
+ * so they can be broadcast before they reach the database, and a single flusher thread inserts them
+ * in unordered bulk batches bounded by size and time.
+ *
+ * <p>Accepted messages may already have been broadcast, so a batch that fails is retried with a
+ * capped exponential backoff until it is stored, never dropped. While the database is unavailable
+ * the flusher holds on to its batch and the buffer fills up. It is bounded: when it is full,
+ * producers wait up to the configured offer timeout and are then rejected with a {@link
+ * ServiceUnavailableException}, before anything is broadcast. Whatever is still buffered when the
+ * application shuts down is flushed before the database client closes. Only if the database stays
+ * unreachable past the shutdown timeout are the remaining messages given up, and each of their ids
+ * is logged. Every stored batch is announced with a {@link MessagesPersistedEvent}.
+ *
+ * <p>Edits and deletes must not run against a message that is still buffered: they would not find
+ * it, and a delete would be undone once the insert lands. They first {@link #awaitPersisted(String)
+ * wait} for the message to be stored.
+ */
+@Slf4j
+@Component
+public class MessageWriteBehindQueue {
+
+  private static final int DUPLICATE_KEY_ERROR = 11000;
+  private static final long INITIAL_RETRY_BACKOFF_MILLIS = 100;
+
+  private final MongoTemplate mongoTemplate;
+  private final ApplicationEventPublisher eventPublisher;
+  private final BlockingQueue<Message> queue;
+  // Ids of the accepted messages that are not stored yet, whether queued or in the current batch
+  private final Set<String> unpersistedIds = ConcurrentHashMap.newKeySet();
+  private final Object persistedMonitor = new Object();
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final long offerTimeoutMillis;
+  private final long awaitTimeoutMillis;
+  private final long maxRetryBackoffMillis;
+  private final long shutdownTimeoutMillis;
+
+  private final Counter accepted;
+  private final Counter rejected;
+  private final Counter persisted;
+  private final Counter dropped;
+
+  private volatile boolean running = true;
+  private volatile long shutdownDeadline = Long.MAX_VALUE;
+  private Thread flusher;
+
+  public MessageWriteBehindQueue(
+      MongoTemplate mongoTemplate,
+      ApplicationEventPublisher eventPublisher,
+      MeterRegistry meterRegistry,
+      @Value("${chat.messages.write-behind.capacity:10000}") int capacity,
+      @Value("${chat.messages.write-behind.batch-size:500}") int batchSize,
+      @Value("${chat.messages.write-behind.flush-interval-ms:50}") long flushIntervalMillis,
+      @Value("${chat.messages.write-behind.offer-timeout-ms:200}") long offerTimeoutMillis,
+      @Value("${chat.messages.write-behind.await-timeout-ms:5000}") long awaitTimeoutMillis,
+      @Value("${chat.messages.write-behind.max-retry-backoff-ms:5000}") long maxRetryBackoffMillis,
+      @Value("${chat.messages.write-behind.shutdown-timeout-ms:30000}")
+          long shutdownTimeoutMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.eventPublisher = eventPublisher;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.awaitTimeoutMillis = awaitTimeoutMillis;
+    this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+
+    Gauge.builder("chat.messages.write_behind.depth", queue, BlockingQueue::size)
+        .description("Messages accepted but not yet persisted")
+        .register(meterRegistry);
+    this.accepted = meterRegistry.counter("chat.messages.write_behind.accepted");
+    this.rejected = meterRegistry.counter("chat.messages.write_behind.rejected");
+    this.persisted = meterRegistry.counter("chat.messages.write_behind.persisted");
+    this.dropped = meterRegistry.counter("chat.messages.write_behind.dropped");
+  }
+
+  @PostConstruct
+  void start() {
+    flusher = new Thread(this::runFlusher, "message-write-behind");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Assigns an id and timestamp to the message if it has none and queues it for persistence.
+   *
+   * @param message the validated message to persist.
+   * @return the same message, now carrying its final id and timestamp.
+   * @throws ServiceUnavailableException if the buffer stays full for longer than the offer timeout,
+   *     or the application is shutting down.
+   */
+  public Message enqueue(Message message) {
+    if (message.getId() == null) {
+      message.setId(new ObjectId().toHexString());
+    }
+    if (message.getTimestamp() == null) {
+      message.setTimestamp(Instant.now());
+    }
+
+    boolean offered = false;
+    if (running) {
+      // Tracked before the flusher can see it, so it is never stored while untracked
+      unpersistedIds.add(message.getId());
+      try {
+        offered = queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (!offered) {
+      unpersistedIds.remove(message.getId());
+      rejected.increment();
+      throw new ServiceUnavailableException("Message backlog is full, please retry shortly");
+    }
+    accepted.increment();
+    return message;
+  }
+
+  /**
+   * Waits until the message with the given id is stored, if it was accepted and is not yet. Returns
+   * at once for any other id.
+   *
+   * @throws ServiceUnavailableException if the message is not stored within the await timeout.
+   */
+  public void awaitPersisted(String messageId) {
+    if (!unpersistedIds.contains(messageId)) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + awaitTimeoutMillis;
+    synchronized (persistedMonitor) {
+      while (unpersistedIds.contains(messageId)) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new ServiceUnavailableException(
+              "Message is still being stored, please retry shortly");
+        }
+        try {
+          persistedMonitor.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ServiceUnavailableException(
+              "Message is still being stored, please retry shortly");
+        }
+      }
+    }
+  }
+
+  /** Number of messages accepted but not yet handed to the database. */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  private void runFlusher() {
+    List<Message> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Message first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        // Give a burst the rest of the window to fill the batch
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        flush(batch);
+      } catch (InterruptedException e) {
+        // Shutdown drains whatever is left on the caller's thread
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Unexpected error in message write-behind flusher: {}", e.getMessage());
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<Message> batch) {
+    List<Message> pending = batch;
+    for (int attempt = 1; !pending.isEmpty(); attempt++) {
+      try {
+        BulkOperations bulk =
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+        bulk.insert(pending);
+        bulk.execute();
+        stored(pending);
+        return;
+      } catch (RuntimeException e) {
+        List<Message> failed = retryable(pending, e);
+        if (failed.size() < pending.size()) {
+          List<Message> remaining = failed;
+          stored(pending.stream().filter(message -> !remaining.contains(message)).toList());
+        }
+        pending = failed;
+        if (pending.isEmpty()) {
+          return;
+        }
+        if (System.currentTimeMillis() > shutdownDeadline) {
+          dropped.increment(pending.size());
+          released(pending);
+          log.error(
+              "Database still unreachable at shutdown, giving up on {} messages: {}",
+              pending.size(),
+              pending.stream().map(Message::getId).toList());
+          return;
+        }
+        log.warn(
+            "Flushing {} messages failed (attempt {}), retrying: {}",
+            pending.size(),
+            attempt,
+            e.getMessage());
+        sleepBeforeRetry(attempt);
+      }
+    }
+  }
+
+  private void stored(List<Message> messages) {
+    persisted.increment(messages.size());
+    released(messages);
+    try {
+      eventPublisher.publishEvent(new MessagesPersistedEvent(List.copyOf(messages)));
+    } catch (RuntimeException e) {
+      // The messages are stored either way, a failing listener must not make us insert them again
+      log.error("Handling {} persisted messages failed: {}", messages.size(), e.getMessage());
+    }
+  }
+
+  private void released(List<Message> messages) {
+    messages.forEach(message -> unpersistedIds.remove(message.getId()));
+    synchronized (persistedMonitor) {
+      persistedMonitor.notifyAll();
+    }
+  }
+
+  // Keeps only the messages whose insert failed for a reason other than already being stored
+  private List<Message> retryable(List<Message> pending, RuntimeException e) {
+    if (!(e instanceof BulkOperationException bulkError)) {
+      return pending;
+    }
+    List<Message> failed = new ArrayList<>();
+    bulkError.getErrors().stream()
+        .filter(error -> error.getCode() != DUPLICATE_KEY_ERROR)
+        .forEach(error -> failed.add(pending.get(error.getIndex())));
+    return failed;
+  }
+
+  private void sleepBeforeRetry(int attempt) {
+    long backoff = INITIAL_RETRY_BACKOFF_MILLIS << Math.min(attempt - 1, 16);
+    try {
+      Thread.sleep(Math.min(backoff, maxRetryBackoffMillis));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+    // Stops accepting, then gives the flusher and the final drain until the deadline to finish
+    shutdownDeadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+    running = false;
+    flusher.join(shutdownTimeoutMillis);
+
+    List<Message> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (int from = 0; from < remaining.size(); from += batchSize) {
+      flush(remaining.subList(from, Math.min(from + batchSize, remaining.size())));
+    }
+    if (!remaining.isEmpty()) {
+      log.info("Flushed {} buffered messages on shutdown", remaining.size());
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.example.soen341_backend.message;
+
+import java.util.List;
+
+/**
+ * Published by the {@link MessageWriteBehindQueue} flusher once a batch of messages is stored. Each
+ * message is reported exactly once; listeners run on the flusher thread, so they should batch their
+ * own writes rather than do work per message.
+ */
+public record MessagesPersistedEvent(List<Message> messages) {}
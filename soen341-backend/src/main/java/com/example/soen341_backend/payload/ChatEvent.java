@@ -0,0 +1,11 @@
+package com.example.soen341_backend.payload;
+
+/**
+ * A notification pushed to clients about messages or conversations. The {@code type} property tells
+ * clients how to read the rest of the payload; it comes first in every encoding, followed by the
+ * fields of the event in a fixed order.
+ */
+public sealed interface ChatEvent permits MessageUpdatedEvent, MessageDeletedEvent, TypingEvent {
+
+  String getType();
+}
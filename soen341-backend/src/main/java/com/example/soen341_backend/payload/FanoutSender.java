@@ -0,0 +1,91 @@
+package com.example.soen341_backend.payload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Sends a payload to any number of destinations while serializing it only once.
+ *
+ * <p>{@link SimpMessagingTemplate#convertAndSend} runs the message converter on every call, so
+ * notifying several destinations of the same event used to encode it once per destination. Here the
+ * payload is encoded up front and the same byte buffer is handed to the broker for every
+ * destination; the broker and the user destination resolver pass it through untouched to each
+ * subscribed session.
+ */
+@Component
+public class FanoutSender {
+
+  /** User destination of direct messages and their edits and deletions. */
+  public static final String DIRECT_MESSAGES_QUEUE = "/queue/direct-messages";
+
+  private final SimpMessagingTemplate messagingTemplate;
+  private final ObjectMapper objectMapper;
+  private final Counter encoded;
+  private final Counter sent;
+
+  public FanoutSender(
+      SimpMessagingTemplate messagingTemplate,
+      ObjectMapper objectMapper,
+      MeterRegistry meterRegistry) {
+    this.messagingTemplate = messagingTemplate;
+    this.objectMapper = objectMapper;
+    this.encoded = meterRegistry.counter("chat.websocket.fanout.encoded");
+    this.sent = meterRegistry.counter("chat.websocket.fanout.sent");
+  }
+
+  /** Encodes the payload as JSON, once, into a message that can be sent any number of times. */
+  public Message<byte[]> encode(Object payload) {
+    try {
+      byte[] body = objectMapper.writeValueAsBytes(payload);
+      encoded.increment();
+      return MessageBuilder.withPayload(body)
+          .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+          .build();
+    } catch (JsonProcessingException e) {
+      throw new MessageConversionException("Could not encode " + payload.getClass(), e);
+    }
+  }
+
+  public void send(String destination, Object payload) {
+    send(List.of(destination), payload);
+  }
+
+  public void send(Collection<String> destinations, Object payload) {
+    Message<byte[]> message = encode(payload);
+    for (String destination : new LinkedHashSet<>(destinations)) {
+      // The template copies the headers, so the shared message is never mutated
+      messagingTemplate.send(destination, message);
+      sent.increment();
+    }
+  }
+
+  /**
+   * Sends the payload to the user destination of every given user, e.g. "/queue/direct-messages",
+   * which reaches each session of the user that subscribed to "/user/queue/direct-messages".
+   */
+  public void sendToUsers(Collection<String> userIds, String destination, Object payload) {
+    String suffix = destination.startsWith("/") ? destination : "/" + destination;
+    send(
+        userIds.stream()
+            .map(
+                userId ->
+                    messagingTemplate.getUserDestinationPrefix()
+                        + StringUtils.replace(userId, "/", "%2F")
+                        + suffix)
+            .toList(),
+        payload);
+  }
+}
@@ -0,0 +1,12 @@
+package com.example.soen341_backend.payload;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"type", "messageId", "deletedBy"})
+public record MessageDeletedEvent(String messageId, String deletedBy) implements ChatEvent {
+
+  @Override
+  public String getType() {
+    return "Message deleted";
+  }
+}
@@ -0,0 +1,14 @@
+package com.example.soen341_backend.payload;
+
+import com.example.soen341_backend.message.Message;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"type", "messageId", "editedBy", "message"})
+public record MessageUpdatedEvent(String messageId, String editedBy, Message message)
+    implements ChatEvent {
+
+  @Override
+  public String getType() {
+    return "Message updated";
+  }
+}
@@ -0,0 +1,13 @@
+package com.example.soen341_backend.payload;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"type", "channelId", "userId", "username", "typing"})
+public record TypingEvent(String channelId, String userId, String username, boolean typing)
+    implements ChatEvent {
+
+  @Override
+  public String getType() {
+    return "User typing";
+  }
+}
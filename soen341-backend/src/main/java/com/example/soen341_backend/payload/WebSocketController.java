@@ -1,29 +1,29 @@
 package com.example.soen341_backend.payload;
 
-import com.example.soen341_backend.exceptions.ResourceNotFoundException;
 import com.example.soen341_backend.message.Message;
 import com.example.soen341_backend.message.MessageService;
-import com.example.soen341_backend.security.JwtUtils;
-import com.example.soen341_backend.user.User;
-import com.example.soen341_backend.user.UserRepository;
+import com.example.soen341_backend.readstate.ReadCursorUpdate;
+import com.example.soen341_backend.readstate.ReadStateService;
+import com.example.soen341_backend.security.ChatPrincipal;
+import com.example.soen341_backend.typing.TypingService;
+import com.example.soen341_backend.typing.TypingUpdate;
 import com.example.soen341_backend.user.UserService;
 import java.time.Instant;
-import java.util.Map;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 @Controller
 @AllArgsConstructor
 public class WebSocketController {
-  private final SimpMessagingTemplate messagingTemplate;
+  private final FanoutSender fanoutSender;
   private final MessageService messageService;
   private final UserService userService;
-  private final JwtUtils jwtUtils;
-  private final UserRepository userRepository;
+  private final ReadStateService readStateService;
+  private final TypingService typingService;
 
   // app/group-message
   @MessageMapping({"/group-message"})
@@ -36,47 +36,42 @@ public class WebSocketController {
      *     details (type: {@link WebSocketMessage}).
      * @param headerAccessor provides access to WebSocket session headers for extracting
      *     authentication details (type: {@link SimpMessageHeaderAccessor}).
-     *     <p>Processes the message by extracting the sender's username, retrieving the user from
-     *     the database, saving the message, and broadcasting it to all subscribers of the specified
-     *     channel.
+     *     <p>Processes the message by reading the sender from the session principal pinned at
+     *     CONNECT, queueing the message for persistence, and broadcasting it to all subscribers of
+     *     the specified channel without waiting for the database write.
      * @return void (no explicit return, message is sent via WebSocket).
      */
     System.out.println("Received Channel message: " + webSocketMessage.getContent());
     System.out.println("Sending message to: /channel/" + webSocketMessage.getChannelId());
 
-    // Extract user ID from the authentication token
-    String senderUsername = getUsernameFromHeaders(headerAccessor);
-
-    User findUser =
-        userRepository
-            .findByUsername(senderUsername)
-            .orElseThrow(
-                () ->
-                    new ResourceNotFoundException(
-                        "No user exists with this username: " + senderUsername));
+    // Sender identity was resolved once when the session connected
+    ChatPrincipal sender = getPrincipal(headerAccessor);
+    String senderUsername = sender.getUsername();
 
     // Create and save message to database
     Message message = new Message();
     message.setContent(webSocketMessage.getContent());
-    message.setSenderId(findUser.getId());
+    message.setSenderId(sender.getUserId());
     message.setSenderUsername(senderUsername);
     message.setChannelId(webSocketMessage.getChannelId());
     message.setTimestamp(Instant.now());
     message.setDirectMessage(false);
 
-    messageService.sendChannelMessage(message, findUser.getId());
+    Message acceptedMessage = messageService.sendChannelMessage(message, sender.getUserId());
+    typingService.stopped(sender.getUserId(), acceptedMessage.getChannelId());
 
     // Add sender name to the response
-    webSocketMessage.setSenderId(findUser.getId());
+    webSocketMessage.setId(acceptedMessage.getId());
+    webSocketMessage.setSenderId(sender.getUserId());
     webSocketMessage.setSenderUsername(senderUsername);
-    webSocketMessage.setTimestamp(Instant.now());
+    webSocketMessage.setTimestamp(acceptedMessage.getTimestamp());
     webSocketMessage.setDirectMessage(false);
     webSocketMessage.setReceiverId(webSocketMessage.getReceiverId());
     webSocketMessage.setChannelId(webSocketMessage.getChannelId());
 
     String destination = "/topic/channel/" + webSocketMessage.getChannelId();
     // Broadcast message to all subscribers of this channel
-    messagingTemplate.convertAndSend(destination, webSocketMessage);
+    fanoutSender.send(destination, webSocketMessage);
   }
 
   // app/direct-message
@@ -90,61 +85,89 @@ public class WebSocketController {
      *     and metadata (type: {@link WebSocketMessage}).
      * @param headerAccessor provides access to WebSocket session headers for extracting
      *     authentication details (type: {@link SimpMessageHeaderAccessor}).
-     *     <p>Extracts the sender's username, retrieves the sender from the database, creates and
-     *     saves the direct message, and sends it to the intended recipient via WebSocket.
+     *     <p>Reads the sender from the session principal, creates and queues the direct message,
+     *     and sends it to the intended recipient via WebSocket.
      * @return void (no explicit return, message is sent via WebSocket).
      */
     System.out.println("Received Direct message: " + webSocketMessage);
 
-    // Extract user ID from the authentication token
-    String senderUsername = getUsernameFromHeaders(headerAccessor);
-
-    User findUser =
-        userRepository
-            .findByUsername(senderUsername)
-            .orElseThrow(() -> new ResourceNotFoundException("No user exists with this username"));
+    // Sender identity was resolved once when the session connected
+    ChatPrincipal sender = getPrincipal(headerAccessor);
+    String senderUsername = sender.getUsername();
 
     // Create and save direct message
     Message message = new Message();
     message.setContent(webSocketMessage.getContent());
-    message.setSenderId(findUser.getId()); // Use the extracted senderId
+    message.setSenderId(sender.getUserId()); // Use the extracted senderId
+    message.setSenderUsername(senderUsername);
     message.setChannelId(webSocketMessage.getChannelId());
     message.setTimestamp(Instant.now());
     message.setDirectMessage(webSocketMessage.isDirectMessage());
     message.setReceiverId(webSocketMessage.getReceiverId());
 
     Message savedMessage =
-        messageService.sendDirectMessage(message, senderUsername, webSocketMessage.getReceiverId());
+        messageService.sendDirectMessage(
+            message, sender.getUserId(), webSocketMessage.getReceiverId());
+    typingService.stopped(sender.getUserId(), savedMessage.getChannelId());
 
     // Add channel ID and sender name to the response
-    webSocketMessage.setSenderId(findUser.getId()); // Ensure the correct sender ID is set
+    webSocketMessage.setId(savedMessage.getId());
+    webSocketMessage.setSenderId(sender.getUserId()); // Ensure the correct sender ID is set
     webSocketMessage.setChannelId(savedMessage.getChannelId());
     webSocketMessage.setSenderUsername(senderUsername);
-    webSocketMessage.setTimestamp(Instant.now());
+    webSocketMessage.setTimestamp(savedMessage.getTimestamp());
 
     //    // Send message to sender
     //    messagingTemplate.convertAndSendToUser(webSocketMessage.getSenderId(),"/queue" + senderId,
     // webSocketMessage);
 
-    // Send message to recipient
-    messagingTemplate.convertAndSendToUser(
-        webSocketMessage.getReceiverId(),
-        "/direct-messages",
-        webSocketMessage); // /user/{recipientId}/queue
+    // Send message to recipient, and to the sender's other sessions
+    fanoutSender.sendToUsers(
+        List.of(webSocketMessage.getSenderId(), webSocketMessage.getReceiverId()),
+        FanoutSender.DIRECT_MESSAGES_QUEUE,
+        webSocketMessage); // /user/{userId}/queue/direct-messages
   }
 
-  // Helper method to extract user ID from WebSocket headers
-  private String getUsernameFromHeaders(SimpMessageHeaderAccessor headerAccessor) {
-    Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
-    if (sessionAttributes != null && sessionAttributes.containsKey("username")) {
-      return (String) sessionAttributes.get("username");
-    }
+  // app/read
+  @MessageMapping({"/read"})
+  public void handleRead(
+      @Payload ReadCursorUpdate update, SimpMessageHeaderAccessor headerAccessor) {
+    /**
+     * Handles a client moving its read position in a channel or direct message.
+     *
+     * @param update the conversation and the message read up to (type: {@link ReadCursorUpdate}).
+     * @param headerAccessor provides access to the session principal (type: {@link
+     *     SimpMessageHeaderAccessor}).
+     *     <p>The position is coalesced with other moves of the same conversation and written on the
+     *     next read state flush, so it is cheap to send one for every message displayed.
+     * @return void (nothing is sent back).
+     */
+    ChatPrincipal reader = getPrincipal(headerAccessor);
+    readStateService.markRead(reader.getUserId(), update);
+  }
+
+  // app/typing
+  @MessageMapping({"/typing"})
+  public void handleTyping(@Payload TypingUpdate update, SimpMessageHeaderAccessor headerAccessor) {
+    /**
+     * Handles a client reporting that its user started or stopped typing.
+     *
+     * @param update the conversation and whether the user is typing (type: {@link TypingUpdate}).
+     * @param headerAccessor provides access to the session principal (type: {@link
+     *     SimpMessageHeaderAccessor}).
+     *     <p>Nothing is persisted: the report is checked against the cached membership of the
+     *     conversation and only broadcast on its typing topic when it changes what other members
+     *     see.
+     * @return void (changes are sent to the typing topic of the conversation).
+     */
+    ChatPrincipal typist = getPrincipal(headerAccessor);
+    typingService.update(typist.getUserId(), typist.getUsername(), update);
+  }
 
-    // If username not found in session attributes, try to extract from authorization header
-    String authHeader = headerAccessor.getFirstNativeHeader("Authorization");
-    if (authHeader != null && authHeader.startsWith("Bearer ")) {
-      String token = authHeader.substring(7);
-      return jwtUtils.extractUsername(token);
+  // Helper method to read the principal pinned to the session at CONNECT
+  private ChatPrincipal getPrincipal(SimpMessageHeaderAccessor headerAccessor) {
+    if (headerAccessor.getUser() instanceof ChatPrincipal principal) {
+      return principal;
     }
 
     throw new IllegalStateException("User not authenticated");
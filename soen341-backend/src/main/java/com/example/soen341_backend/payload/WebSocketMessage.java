@@ -1,16 +1,29 @@
 package com.example.soen341_backend.payload;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import java.time.Instant;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+// Field order is part of the binary wire schema, append new fields at the end
+@JsonPropertyOrder({
+  "id",
+  "content",
+  "senderId",
+  "senderUsername",
+  "channelId",
+  "receiverId",
+  "directMessage",
+  "timestamp"
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
 @Setter
 public class WebSocketMessage {
+  private String id;
   private String content;
   private String senderId;
   private String senderUsername;
@@ -0,0 +1,9 @@
+package com.example.soen341_backend.readstate;
+
+import java.time.Instant;
+
+/**
+ * A client moving its read position to a message. Live messages carry their id and timestamp, so
+ * the client can send both without having to look anything up.
+ */
+public record ReadCursorUpdate(String channelId, String messageId, Instant timestamp) {}
@@ -0,0 +1,44 @@
+package com.example.soen341_backend.readstate;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * How far one user has read one conversation. The id is derived from the pair (see {@link
+ * #idOf(String, String)}) so a state can be upserted without a lookup and never exists twice.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "read_states")
+@CompoundIndex(name = "channel_readers", def = "{'channelId': 1, 'userId': 1}")
+public class ReadState {
+
+  @Id private String id;
+
+  @Indexed private String userId;
+  private String channelId;
+
+  // Position of the last message the user has read, null until they first read the conversation
+  private String lastReadMessageId;
+  private Instant lastReadAt;
+
+  // Messages from other users stored after the read position, kept up to date as they are stored
+  private long unreadCount;
+
+  // Bumped with every change of the counter, so a recount is only stored over the state it was
+  // taken from. Missing on states written before it existed, which reads as 0
+  private long version;
+
+  private Instant updatedAt;
+
+  public static String idOf(String userId, String channelId) {
+    return userId + ":" + channelId;
+  }
+}
@@ -0,0 +1,52 @@
+package com.example.soen341_backend.readstate;
+
+import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping(value = "/api/read-state", produces = MediaType.APPLICATION_JSON_VALUE)
+@AllArgsConstructor
+@CrossOrigin
+public class ReadStateController {
+
+  private final ReadStateService readStateService;
+  private final UserService userService;
+  private final JwtUtils jwtUtils;
+
+  @GetMapping
+  public List<ReadStateSummary> getReadStates(HttpServletRequest request) {
+    // Extract userId from JWT token
+    User user = userService.getUserByUsername(getUserUsernameFromRequest(request));
+    return readStateService.getReadStates(user.getId());
+  }
+
+  // Accepted, not written: positions are coalesced and stored on the next flush
+  @PutMapping("/{channelId}")
+  public ResponseEntity<?> markRead(
+      @PathVariable String channelId,
+      @RequestBody ReadCursorUpdate update,
+      HttpServletRequest request) {
+    // Extract userId from JWT token
+    User user = userService.getUserByUsername(getUserUsernameFromRequest(request));
+    readStateService.markRead(
+        user.getId(), new ReadCursorUpdate(channelId, update.messageId(), update.timestamp()));
+    return ResponseEntity.accepted().build();
+  }
+
+  // Helper method to extract the username from JWT token in the request
+  private String getUserUsernameFromRequest(HttpServletRequest request) {
+    String bearerToken = request.getHeader("Authorization");
+    if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+      String token = bearerToken.substring(7);
+      return jwtUtils.extractUsername(token);
+    }
+    throw new IllegalStateException("No JWT token found in request");
+  }
+}
@@ -0,0 +1,324 @@
+package com.example.soen341_backend.readstate;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.exceptions.BadRequestException;
+import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.message.Message;
+import com.example.soen341_backend.message.MessageService;
+import com.example.soen341_backend.message.MessagesPersistedEvent;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps a read position and an unread counter per user and conversation.
+ *
+ * <p>Counters are maintained incrementally: every batch stored by the message write-behind queue
+ * bumps the counters of the other readers of each channel with one multi-update per channel and
+ * sender, so a badge is a single document read and never a count over the history.
+ *
+ * <p>Read positions only move forward. Moves are coalesced in memory per user and conversation and
+ * written in one bulk upsert per flush interval, so a client scrolling through a conversation costs
+ * at most one write per conversation and interval. The unread count stored with a position is
+ * recounted whenever a message is counted in between the count and the write, so a concurrent
+ * increment is never overwritten.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReadStateService {
+
+  private static final int DUPLICATE_KEY_ERROR = 11000;
+  private static final int MAX_WRITE_ATTEMPTS = 3;
+
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+  private final ChannelService channelService;
+  private final MessageService messageService;
+
+  /** read state id -> furthest position reported since the last flush */
+  private final Map<String, PendingCursor> pendingCursors = new ConcurrentHashMap<>();
+
+  /**
+   * Moves the read position of a user in a conversation to the given message. Positions behind the
+   * current one are ignored.
+   *
+   * @throws BadRequestException if the message id or timestamp is missing.
+   * @throws UnauthorizedException if the user is not a member of the conversation.
+   */
+  public void markRead(String userId, ReadCursorUpdate update) {
+    if (update.channelId() == null || update.messageId() == null || update.timestamp() == null) {
+      throw new BadRequestException("A read position needs a channel, message id and timestamp");
+    }
+    if (!channelService.isMember(update.channelId(), userId)) {
+      throw new UnauthorizedException("You don't have access to this channel");
+    }
+
+    // A clock-skewed client must not be able to mark messages that do not exist yet as read
+    Instant now = Instant.now();
+    Instant timestamp = update.timestamp().isAfter(now) ? now : update.timestamp();
+    PendingCursor cursor =
+        new PendingCursor(userId, update.channelId(), update.messageId(), timestamp);
+    pendingCursors.merge(
+        ReadState.idOf(userId, update.channelId()),
+        cursor,
+        (current, next) -> next.isAfter(current) ? next : current);
+  }
+
+  public List<ReadStateSummary> getReadStates(String userId) {
+    return mongoTemplate
+        .find(new Query(Criteria.where("userId").is(userId)), ReadState.class)
+        .stream()
+        .map(ReadStateSummary::of)
+        .toList();
+  }
+
+  /**
+   * Looks up the unread counters of a user with one query by primary key. Conversations without a
+   * stored state yet, such as those joined before counters existed, cost one more count aggregation
+   * over all of them and one bulk upsert that creates their states, so later reads are the single
+   * lookup again.
+   *
+   * @return a map from channel id to unread count, with an entry for every given channel.
+   */
+  public Map<String, Long> getUnreadCounts(
+      String userId, Collection<String> channelIds, Instant since) {
+    Map<String, Long> counts = new HashMap<>();
+    if (channelIds.isEmpty()) {
+      return counts;
+    }
+    Query query =
+        new Query(
+            Criteria.where("_id")
+                .in(channelIds.stream().map(id -> ReadState.idOf(userId, id)).toList()));
+    query.fields().include("channelId", "unreadCount");
+    for (ReadState state : mongoTemplate.find(query, ReadState.class)) {
+      counts.put(state.getChannelId(), state.getUnreadCount());
+    }
+
+    List<String> missing =
+        channelIds.stream().filter(channelId -> !counts.containsKey(channelId)).toList();
+    if (!missing.isEmpty()) {
+      Map<String, Long> backfilled = messageService.countUnreadMessages(missing, userId, since);
+      missing.forEach(channelId -> counts.put(channelId, backfilled.getOrDefault(channelId, 0L)));
+      createStates(userId, missing, counts);
+    }
+    return counts;
+  }
+
+  private void createStates(String userId, List<String> channelIds, Map<String, Long> counts) {
+    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadState.class);
+    Instant now = Instant.now();
+    for (String channelId : channelIds) {
+      bulk.upsert(
+          new Query(Criteria.where("_id").is(ReadState.idOf(userId, channelId))),
+          new Update()
+              .setOnInsert("userId", userId)
+              .setOnInsert("channelId", channelId)
+              .setOnInsert("unreadCount", counts.get(channelId))
+              .setOnInsert("updatedAt", now));
+    }
+    try {
+      bulk.execute();
+    } catch (RuntimeException e) {
+      // Only a cache miss: the next read counts again
+      log.warn(
+          "Creating {} read states of user {} failed: {}",
+          channelIds.size(),
+          userId,
+          e.getMessage());
+    }
+  }
+
+  @EventListener
+  public void onMessagesPersisted(MessagesPersistedEvent event) {
+    // channelId -> senderId -> messages stored
+    Map<String, Map<String, Long>> stored = new HashMap<>();
+    for (Message message : event.messages()) {
+      if (message.getChannelId() != null && message.getSenderId() != null) {
+        stored
+            .computeIfAbsent(message.getChannelId(), id -> new HashMap<>())
+            .merge(message.getSenderId(), 1L, Long::sum);
+      }
+    }
+    if (stored.isEmpty()) {
+      return;
+    }
+
+    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadState.class);
+    stored.forEach(
+        (channelId, bySender) ->
+            bySender.forEach(
+                (senderId, count) ->
+                    bulk.updateMulti(
+                        new Query(
+                            Criteria.where("channelId").is(channelId).and("userId").ne(senderId)),
+                        new Update().inc("unreadCount", count).inc("version", 1))));
+    bulk.execute();
+  }
+
+  @Scheduled(fixedDelayString = "${chat.read-state.flush-interval-ms:1000}")
+  public void flush() {
+    if (pendingCursors.isEmpty()) {
+      return;
+    }
+    Map<String, PendingCursor> batch = new HashMap<>();
+    for (String id : pendingCursors.keySet()) {
+      PendingCursor cursor = pendingCursors.remove(id);
+      if (cursor != null) {
+        batch.put(id, cursor);
+      }
+    }
+
+    try {
+      write(batch);
+    } catch (RuntimeException e) {
+      // Keep the positions for the next flush
+      requeue(batch);
+      log.warn("Writing {} read positions failed: {}", batch.size(), e.getMessage());
+    }
+  }
+
+  private void write(Map<String, PendingCursor> batch) {
+    Map<String, PendingCursor> remaining = batch;
+    for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+      remaining = writeOnce(remaining);
+    }
+    // Counters that kept moving under every recount are counted again by the next flush
+    requeue(remaining);
+  }
+
+  /**
+   * Stores each position with its unread count, counted from the state it replaces.
+   *
+   * @return the positions whose state changed between the count and the write.
+   */
+  private Map<String, PendingCursor> writeOnce(Map<String, PendingCursor> batch) {
+    Query query = new Query(Criteria.where("_id").in(batch.keySet()));
+    query.fields().include("lastReadAt", "version");
+    Map<String, ReadState> stored = new HashMap<>();
+    for (ReadState state : mongoTemplate.find(query, ReadState.class)) {
+      stored.put(state.getId(), state);
+    }
+
+    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadState.class);
+    List<String> written = new ArrayList<>();
+    Instant now = Instant.now();
+    batch.forEach(
+        (id, cursor) -> {
+          ReadState state = stored.get(id);
+          if (state != null
+              && state.getLastReadAt() != null
+              && !state.getLastReadAt().isBefore(cursor.timestamp())) {
+            return;
+          }
+          long version = state == null ? 0 : state.getVersion();
+          // Usually nothing newer exists, so this is an empty range scan on the history index
+          long unread =
+              messageService
+                  .countUnreadMessages(
+                      List.of(cursor.channelId()), cursor.userId(), cursor.timestamp())
+                  .getOrDefault(cursor.channelId(), 0L);
+          // Matches only the version that was counted from. Once a message has been counted in or
+          // another position stored, the upsert collides on _id and the position is counted again
+          bulk.upsert(
+              new Query(
+                  Criteria.where("_id")
+                      .is(id)
+                      .and("version")
+                      .in(version == 0 ? new Object[] {0L, null} : new Object[] {version})),
+              new Update()
+                  .set("userId", cursor.userId())
+                  .set("channelId", cursor.channelId())
+                  .set("lastReadMessageId", cursor.messageId())
+                  .set("lastReadAt", cursor.timestamp())
+                  .set("unreadCount", unread)
+                  .set("updatedAt", now)
+                  .inc("version", 1));
+          written.add(id);
+        });
+    if (written.isEmpty()) {
+      return Map.of();
+    }
+
+    Map<String, PendingCursor> conflicting = new HashMap<>();
+    try {
+      bulk.execute();
+    } catch (BulkOperationException e) {
+      int failed = 0;
+      for (BulkWriteError error : e.getErrors()) {
+        if (error.getCode() == DUPLICATE_KEY_ERROR) {
+          String id = written.get(error.getIndex());
+          conflicting.put(id, batch.get(id));
+        } else {
+          failed++;
+        }
+      }
+      if (failed > 0) {
+        log.warn("Writing {} read positions failed: {}", failed, e.getMessage());
+      }
+    }
+    return conflicting;
+  }
+
+  private void requeue(Map<String, PendingCursor> cursors) {
+    // Unless a further position has been reported since
+    cursors.forEach(
+        (id, cursor) ->
+            pendingCursors.merge(
+                id, cursor, (current, retried) -> retried.isAfter(current) ? retried : current));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    Thread initializer = new Thread(this::ensureIndexes, "read-state-indexes");
+    initializer.setDaemon(true);
+    initializer.start();
+  }
+
+  void ensureIndexes() {
+    try {
+      IndexOperations indexOps = mongoTemplate.indexOps(ReadState.class);
+      new MongoPersistentEntityIndexResolver(mappingContext)
+          .resolveIndexFor(ReadState.class)
+          .forEach(indexOps::ensureIndex);
+    } catch (Exception e) {
+      log.error("Creating read state indexes failed: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    flush();
+  }
+
+  private record PendingCursor(
+      String userId, String channelId, String messageId, Instant timestamp) {
+
+    boolean isAfter(PendingCursor other) {
+      int byTime = timestamp.compareTo(other.timestamp);
+      return byTime > 0 || (byTime == 0 && messageId.compareTo(other.messageId) > 0);
+    }
+  }
+}
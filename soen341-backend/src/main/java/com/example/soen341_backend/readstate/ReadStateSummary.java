@@ -0,0 +1,16 @@
+package com.example.soen341_backend.readstate;
+
+import java.time.Instant;
+
+/** The read position and unread badge of one conversation, as sent to its reader. */
+public record ReadStateSummary(
+    String channelId, String lastReadMessageId, Instant lastReadAt, long unreadCount) {
+
+  public static ReadStateSummary of(ReadState state) {
+    return new ReadStateSummary(
+        state.getChannelId(),
+        state.getLastReadMessageId(),
+        state.getLastReadAt(),
+        state.getUnreadCount());
+  }
+}
@@ -0,0 +1,30 @@
+package com.example.soen341_backend.security;
+
+import java.security.Principal;
+import lombok.Getter;
+
+/**
+ * Identity of a STOMP session, resolved once at CONNECT and pinned as the session {@link
+ * Principal}. Message handlers read the sender from here instead of looking the user up per frame.
+ * Its name is the user id, which is how user destinations ({@code /user/{userId}/queue/...})
+ * address a user.
+ *
+ * <p>Channel roles are not pinned here: they are checked against the cached {@code
+ * ChannelMembership} of the channel, which is invalidated whenever they change.
+ */
+@Getter
+public class ChatPrincipal implements Principal {
+
+  private final String userId;
+  private final String username;
+
+  public ChatPrincipal(String userId, String username) {
+    this.userId = userId;
+    this.username = username;
+  }
+
+  @Override
+  public String getName() {
+    return userId;
+  }
+}
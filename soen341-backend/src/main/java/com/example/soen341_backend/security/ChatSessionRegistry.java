@@ -0,0 +1,26 @@
+package com.example.soen341_backend.security;
+
+import com.example.soen341_backend.user.UserRepository;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/** Resolves the {@link ChatPrincipal} of STOMP sessions as they connect. */
+@Component
+@RequiredArgsConstructor
+public class ChatSessionRegistry {
+
+  private final UserRepository userRepository;
+
+  /**
+   * Resolves the full principal for a freshly authenticated connection.
+   *
+   * @param username the username taken from the verified token.
+   * @return the pinned principal, or empty if the user no longer exists.
+   */
+  public Optional<ChatPrincipal> connect(String username) {
+    return userRepository
+        .findByUsername(username)
+        .map(user -> new ChatPrincipal(user.getId(), user.getUsername()));
+  }
+}
@@ -0,0 +1,8 @@
+package com.example.soen341_backend.security;
+
+public enum EmailDeliveryStatus {
+  PENDING,
+  SENDING,
+  SENT,
+  FAILED
+}
@@ -0,0 +1,239 @@
+package com.example.soen341_backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers the emails of the {@link EmailOutbox} on a fixed pool of worker threads, so request
+ * threads only pay for the outbox insert and never wait on the mail server.
+ *
+ * <p>New emails are handed to the workers through a bounded queue of ids; anything that does not
+ * fit, is due for a retry or was left behind by a restart is found by the workers polling the
+ * outbox. Each worker sends what it claimed as one batch over a single SMTP connection. Failed
+ * deliveries are retried with exponential backoff and jitter until the attempt limit is reached.
+ */
+@Slf4j
+@Component
+public class EmailDispatcher {
+
+  private final EmailOutbox outbox;
+  private final JavaMailSender mailSender;
+  private final BlockingQueue<String> newEmailIds;
+  private final int workerCount;
+  private final int batchSize;
+  private final long pollIntervalMillis;
+  private final long leaseMillis;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  private final Counter sent;
+  private final Counter retried;
+  private final Counter failed;
+  private final Timer sendTimer;
+
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean running = true;
+
+  public EmailDispatcher(
+      EmailOutbox outbox,
+      JavaMailSender mailSender,
+      MeterRegistry meterRegistry,
+      @Value("${mail.outbox.workers:2}") int workerCount,
+      @Value("${mail.outbox.batch-size:20}") int batchSize,
+      @Value("${mail.outbox.queue-capacity:1000}") int queueCapacity,
+      @Value("${mail.outbox.poll-interval-ms:5000}") long pollIntervalMillis,
+      @Value("${mail.outbox.lease-ms:120000}") long leaseMillis,
+      @Value("${mail.outbox.max-attempts:8}") int maxAttempts,
+      @Value("${mail.outbox.initial-backoff-ms:2000}") long initialBackoffMillis,
+      @Value("${mail.outbox.max-backoff-ms:600000}") long maxBackoffMillis) {
+    this.outbox = outbox;
+    this.mailSender = mailSender;
+    this.newEmailIds = new ArrayBlockingQueue<>(queueCapacity);
+    this.workerCount = workerCount;
+    this.batchSize = batchSize;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.leaseMillis = leaseMillis;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+
+    Gauge.builder("mail.outbox.queued", newEmailIds, BlockingQueue::size)
+        .description("New emails handed to the workers but not yet claimed")
+        .register(meterRegistry);
+    this.sent = meterRegistry.counter("mail.outbox.sent");
+    this.retried = meterRegistry.counter("mail.outbox.retried");
+    this.failed = meterRegistry.counter("mail.outbox.failed");
+    this.sendTimer = meterRegistry.timer("mail.outbox.send");
+  }
+
+  @PostConstruct
+  void start() {
+    for (int i = 0; i < workerCount; i++) {
+      Thread worker = new Thread(this::runWorker, "email-dispatcher-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  /**
+   * Wakes a worker up for a freshly stored email. If the queue is full the email simply waits for
+   * the next outbox poll.
+   */
+  public void submit(String emailId) {
+    if (!newEmailIds.offer(emailId)) {
+      log.debug("Email queue is full, email {} will be picked up by the next poll", emailId);
+    }
+  }
+
+  private void runWorker() {
+    while (running) {
+      try {
+        List<OutboundEmail> batch = nextBatch();
+        if (!batch.isEmpty()) {
+          deliver(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Unexpected error in email dispatcher: {}", e.getMessage());
+      }
+    }
+  }
+
+  private List<OutboundEmail> nextBatch() throws InterruptedException {
+    String first = newEmailIds.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+    Instant leaseUntil = Instant.now().plusMillis(leaseMillis);
+    if (first == null) {
+      return outbox.claimDue(batchSize, leaseUntil);
+    }
+
+    List<String> ids = new ArrayList<>(batchSize);
+    ids.add(first);
+    newEmailIds.drainTo(ids, batchSize - 1);
+    List<OutboundEmail> batch = new ArrayList<>(ids.size());
+    // An email may already have been claimed by a poll, in which case it is skipped here
+    ids.forEach(id -> outbox.claim(id, leaseUntil).ifPresent(batch::add));
+    return batch;
+  }
+
+  void deliver(List<OutboundEmail> batch) {
+    List<OutboundEmail> emails = new ArrayList<>(batch.size());
+    List<MimeMessage> messages = new ArrayList<>(batch.size());
+    for (OutboundEmail email : batch) {
+      try {
+        messages.add(toMimeMessage(email));
+        emails.add(email);
+      } catch (MessagingException e) {
+        // A malformed address will not get any better by retrying
+        failed.increment();
+        outbox.markFailed(email.getId(), e.getMessage());
+        log.error("Email {} cannot be built: {}", email.getId(), e.getMessage());
+      }
+    }
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    Map<Object, Exception> failures = Map.of();
+    MailException batchFailure = null;
+    Timer.Sample sample = Timer.start();
+    try {
+      // One connection for the whole batch
+      mailSender.send(messages.toArray(MimeMessage[]::new));
+    } catch (MailSendException e) {
+      failures = e.getFailedMessages();
+    } catch (MailException e) {
+      batchFailure = e;
+    } finally {
+      sample.stop(sendTimer);
+    }
+
+    for (int i = 0; i < emails.size(); i++) {
+      OutboundEmail email = emails.get(i);
+      Exception error = batchFailure != null ? batchFailure : failures.get(messages.get(i));
+      if (error == null) {
+        sent.increment();
+        outbox.markSent(email.getId());
+      } else {
+        retryLater(email, error);
+      }
+    }
+  }
+
+  private void retryLater(OutboundEmail email, Exception error) {
+    if (email.getAttempts() >= maxAttempts) {
+      failed.increment();
+      outbox.markFailed(email.getId(), error.getMessage());
+      log.error(
+          "Giving up on email {} after {} attempts: {}",
+          email.getId(),
+          email.getAttempts(),
+          error.getMessage());
+      return;
+    }
+    retried.increment();
+    outbox.reschedule(
+        email.getId(),
+        Instant.now().plusMillis(backoffMillis(email.getAttempts())),
+        error.getMessage());
+    log.warn(
+        "Email {} failed (attempt {}/{}), retrying later: {}",
+        email.getId(),
+        email.getAttempts(),
+        maxAttempts,
+        error.getMessage());
+  }
+
+  // Doubles with every attempt up to the cap, plus up to 20% jitter so retries do not align
+  long backoffMillis(int attempts) {
+    int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+    long backoff = Math.min(initialBackoffMillis << exponent, maxBackoffMillis);
+    return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+  }
+
+  private MimeMessage toMimeMessage(OutboundEmail email) throws MessagingException {
+    MimeMessage message = mailSender.createMimeMessage();
+    MimeMessageHelper helper = new MimeMessageHelper(message, true);
+
+    helper.setTo(email.getTo());
+    helper.setSubject(email.getSubject());
+    helper.setText(email.getBody(), true);
+    return message;
+  }
+
+  /** Emails still claimed when the workers stop are taken over by a poll once their lease ends. */
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+    running = false;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    for (Thread worker : workers) {
+      worker.join(TimeUnit.SECONDS.toMillis(10));
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.example.soen341_backend.security;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persistent outbox of emails waiting to be delivered. Emails are claimed atomically with a lease,
+ * so several workers (and several nodes) can drain the outbox without sending an email twice, and
+ * an email claimed by a worker that died is picked up again once its lease runs out.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailOutbox {
+
+  private static final int MAX_ERROR_LENGTH = 500;
+
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+
+  /** Stores a new email, due immediately. */
+  public OutboundEmail add(String to, String subject, String body) {
+    Instant now = Instant.now();
+    return mongoTemplate.insert(
+        OutboundEmail.builder()
+            .to(to)
+            .subject(subject)
+            .body(body)
+            .status(EmailDeliveryStatus.PENDING)
+            .nextAttemptAt(now)
+            .createdAt(now)
+            .build());
+  }
+
+  /** Claims the given email if it is due, counting a new delivery attempt. */
+  public Optional<OutboundEmail> claim(String id, Instant leaseUntil) {
+    return Optional.ofNullable(claimOne(dueCriteria(Instant.now()).and("_id").is(id), leaseUntil));
+  }
+
+  /** Claims up to {@code limit} due emails, oldest first. */
+  public List<OutboundEmail> claimDue(int limit, Instant leaseUntil) {
+    Instant now = Instant.now();
+    List<OutboundEmail> claimed = new ArrayList<>();
+    while (claimed.size() < limit) {
+      OutboundEmail email = claimOne(dueCriteria(now), leaseUntil);
+      if (email == null) {
+        break;
+      }
+      claimed.add(email);
+    }
+    return claimed;
+  }
+
+  public void markSent(String id) {
+    update(
+        id,
+        new Update()
+            .set("status", EmailDeliveryStatus.SENT)
+            .set("sentAt", Instant.now())
+            .unset("lastError"));
+  }
+
+  public void reschedule(String id, Instant nextAttemptAt, String error) {
+    update(
+        id,
+        new Update()
+            .set("status", EmailDeliveryStatus.PENDING)
+            .set("nextAttemptAt", nextAttemptAt)
+            .set("lastError", truncate(error)));
+  }
+
+  public void markFailed(String id, String error) {
+    update(
+        id,
+        new Update().set("status", EmailDeliveryStatus.FAILED).set("lastError", truncate(error)));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    Thread initializer = new Thread(this::ensureIndexes, "email-outbox-indexes");
+    initializer.setDaemon(true);
+    initializer.start();
+  }
+
+  void ensureIndexes() {
+    try {
+      IndexOperations indexOps = mongoTemplate.indexOps(OutboundEmail.class);
+      new MongoPersistentEntityIndexResolver(mappingContext)
+          .resolveIndexFor(OutboundEmail.class)
+          .forEach(indexOps::ensureIndex);
+    } catch (Exception e) {
+      log.error("Creating email outbox indexes failed: {}", e.getMessage());
+    }
+  }
+
+  // Pending emails whose retry time has come, and emails whose worker lease has run out
+  private static Criteria dueCriteria(Instant now) {
+    return Criteria.where("status")
+        .in(EmailDeliveryStatus.PENDING, EmailDeliveryStatus.SENDING)
+        .and("nextAttemptAt")
+        .lte(now);
+  }
+
+  private OutboundEmail claimOne(Criteria criteria, Instant leaseUntil) {
+    return mongoTemplate.findAndModify(
+        new Query(criteria).with(Sort.by("nextAttemptAt")),
+        new Update()
+            .set("status", EmailDeliveryStatus.SENDING)
+            .set("nextAttemptAt", leaseUntil)
+            .inc("attempts", 1),
+        FindAndModifyOptions.options().returnNew(true),
+        OutboundEmail.class);
+  }
+
+  private void update(String id, Update update) {
+    mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), update, OutboundEmail.class);
+  }
+
+  private static String truncate(String error) {
+    if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+      return error;
+    }
+    return error.substring(0, MAX_ERROR_LENGTH);
+  }
+}
@@ -1,15 +1,17 @@
 package com.example.soen341_backend.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -19,7 +21,11 @@ import org.springframework.web.filter.OncePerRequestFilter;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
   private final JwtUtils jwtUtils;
-  private final UserDetailsService userDetailsService;
+  private final UserDetailsServiceImpl userDetailsService;
+
+  // Build the principal from the token claims instead of loading the user on every request
+  @Value("${jwt.stateless-auth.enabled:true}")
+  private boolean statelessAuth;
 
   /**
    * Filters incoming HTTP requests to validate the JWT token in the "Authorization" header. If the
@@ -49,17 +55,22 @@ public class JwtAuthFilter extends OncePerRequestFilter {
       return;
     }
 
-    // Extract the JWT from the Authorization header
+    // Extract the JWT from the Authorization header and verify it once
     jwt = authHeader.substring(7);
-    username = jwtUtils.extractUsername(jwt);
+    Optional<Claims> claims = jwtUtils.verify(jwt);
+    if (claims.isEmpty()) {
+      // An invalid token leaves the request unauthenticated
+      filterChain.doFilter(request, response);
+      return;
+    }
+    username = claims.get().getSubject();
 
-    // If a valid username is found and no authentication is set, validate the token and set
-    // authentication context
+    // If a valid username is found and no authentication is set, set the authentication context
     if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-      UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+      UserDetails userDetails = resolveUserDetails(claims.get());
 
-      // If the token is valid and user details are loaded, authenticate the user
-      if (jwtUtils.validateToken(jwt) && userDetails != null) {
+      // If user details are loaded, authenticate the user
+      if (userDetails != null) {
         UsernamePasswordAuthenticationToken authToken =
             new UsernamePasswordAuthenticationToken(
                 userDetails, null, userDetails.getAuthorities());
@@ -73,4 +84,18 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     // Proceed with the filter chain
     filterChain.doFilter(request, response);
   }
+
+  /**
+   * Resolves the authenticated principal for a verified token. Tokens that carry the user id and
+   * token version are trusted as is, since revocation is already enforced during verification;
+   * older tokens without those claims fall back to a cached user lookup.
+   */
+  private UserDetails resolveUserDetails(Claims claims) {
+    if (statelessAuth
+        && claims.get(JwtUtils.USER_ID_CLAIM) != null
+        && claims.get(JwtUtils.TOKEN_VERSION_CLAIM) != null) {
+      return UserDetailsImpl.fromClaims(claims);
+    }
+    return userDetailsService.loadCachedUserByUsername(claims.getSubject());
+  }
 }
@@ -1,14 +1,28 @@
 package com.example.soen341_backend.security;
 
+import com.example.soen341_backend.exceptions.InvalidTokenException;
+import com.example.soen341_backend.exceptions.ServiceUnavailableException;
+import com.example.soen341_backend.user.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.util.Collections;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -19,17 +33,48 @@ public class JwtUtils {
       "YourSuperSecretKeyForJwtDontShare123456789012"; // Use 256-bit key
   private static final long EXPIRATION_TIME = 86400000; // 1 day
 
-  private final Set<String> tokenBlacklist = Collections.synchronizedSet(new HashSet<>());
+  public static final String USER_ID_CLAIM = "uid";
+  public static final String TOKEN_VERSION_CLAIM = "ver";
+
+  private final Key signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+  private final JwtParser parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+
+  // Tokens whose signature was already checked, each kept no longer than its own expiry
+  private final Cache<String, Claims> verifiedTokens;
+
+  private final TokenRevocationStore revocationStore;
+
+  public JwtUtils(
+      TokenRevocationStore revocationStore,
+      MeterRegistry meterRegistry,
+      @Value("${jwt.verified-cache.max-size:10000}") long verifiedCacheSize) {
+    this.revocationStore = revocationStore;
+    this.verifiedTokens =
+        Caffeine.newBuilder()
+            .maximumSize(verifiedCacheSize)
+            .expireAfter(new UntilTokenExpiry())
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verifiedJwt");
+  }
 
   /**
-   * Adds a token to the blacklist, invalidating it for future use.
+   * Revokes a token, invalidating it for future use until it expires. Tokens that are already
+   * invalid or expired need no revocation and are ignored.
    *
    * @param token The JWT token to blacklist.
    */
   public void blacklistToken(String token) {
-    tokenBlacklist.add(token);
-    // Schedule removal of this token from blacklist after expiration
-    // to prevent memory leaks (implementation depends on your application)
+    try {
+      Claims claims = parseVerifiedClaims(token);
+      Date expiration = claims.getExpiration();
+      Instant expiresAt =
+          expiration != null ? expiration.toInstant() : Instant.now().plusMillis(EXPIRATION_TIME);
+      revocationStore.revoke(tokenId(claims, token), expiresAt);
+      verifiedTokens.invalidate(token);
+    } catch (JwtException | IllegalArgumentException e) {
+      log.debug("Not revoking invalid JWT token: {}", e.getMessage());
+    }
   }
 
   /**
@@ -39,57 +84,129 @@ public class JwtUtils {
    * @return true if the token is blacklisted, false otherwise.
    */
   public boolean isTokenBlacklisted(String token) {
-    return tokenBlacklist.contains(token);
+    try {
+      return revocationStore.isRevoked(tokenId(parseVerifiedClaims(token), token));
+    } catch (JwtException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the id a token is revoked under: its {@code jti} claim, or the SHA-256 of the token for
+   * tokens issued before ids were added.
+   */
+  private String tokenId(Claims claims, String token) {
+    if (claims.getId() != null) {
+      return claims.getId();
+    }
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
   }
 
   /**
-   * Generates and returns a signing key used for HMAC (Hash-based Message Authentication Code)
-   * signing. The key is derived from the predefined secret key string by converting it into a byte
-   * array. This signing key is used for signing or validating JWT tokens.
+   * Revokes every token issued to the user before their current token version. Callers bump {@link
+   * User#getTokenVersion()} first, for example after a password reset.
    *
-   * @return The signing key used for HMAC SHA-based signing, represented as a {@link Key} object.
+   * @param user The user whose older tokens are revoked.
    */
-  private Key getSigningKey() {
-    return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+  public void revokeTokensBefore(User user) {
+    revocationStore.revokeVersionsBelow(
+        user.getId(), user.getTokenVersion(), Instant.now().plusMillis(EXPIRATION_TIME));
   }
 
   /**
-   * Generates a JWT (JSON Web Token) for a given username. The token is created with the specified
-   * username as the subject, the current timestamp as the issue date, and an expiration time
-   * calculated from the current time. The token is signed using the HMAC SHA-256 algorithm with a
-   * signing key derived from the predefined secret key.
+   * Generates a JWT (JSON Web Token) for a given user. The token is created with the user's
+   * username as the subject, the user id and token version as claims, the current timestamp as the
+   * issue date, and an expiration time calculated from the current time. The token is signed using
+   * the HMAC SHA-256 algorithm with a signing key derived from the predefined secret key.
    *
-   * @param username The username for which the JWT token is generated. This value is used as the
-   *     subject of the token.
+   * @param user The user for which the JWT token is generated.
    * @return The generated JWT token as a {@link String}.
    */
-  public String generateToken(String username) {
+  public String generateToken(User user) {
     return Jwts.builder()
-        .setSubject(username)
+        .setId(UUID.randomUUID().toString())
+        .setSubject(user.getUsername())
+        .claim(USER_ID_CLAIM, user.getId())
+        .claim(TOKEN_VERSION_CLAIM, user.getTokenVersion())
         .setIssuedAt(new Date(System.currentTimeMillis()))
         .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-        .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+        .signWith(signingKey, SignatureAlgorithm.HS256)
         .compact();
   }
 
+  /**
+   * Parses the given JWT token, verifies its signature and expiry, and returns its claims. Tokens
+   * that were verified before are answered from a bounded cache without re-checking the signature;
+   * a cached entry is dropped as soon as the token itself expires.
+   *
+   * @param token The JWT token to parse.
+   * @return The verified claims of the token.
+   * @throws JwtException If the token is malformed, expired or its signature does not match.
+   * @throws IllegalArgumentException If the token is null or empty.
+   */
+  public Claims parseVerifiedClaims(String token) {
+    Claims cached = verifiedTokens.getIfPresent(token);
+    if (cached != null) {
+      return cached;
+    }
+    Claims claims = parser.parseClaimsJws(token).getBody();
+    verifiedTokens.put(token, claims);
+    return claims;
+  }
+
+  /**
+   * Verifies the provided JWT token once and returns its claims. This is the single entry point
+   * callers should use when they need both the validity and the contents of a token. Revoked tokens
+   * are treated as invalid, and so is every token until the persisted revocations have been loaded
+   * after a restart.
+   *
+   * @param token The JWT token to be verified.
+   * @return The verified claims, or an empty {@link Optional} if the token is invalid or revoked.
+   */
+  public Optional<Claims> verify(String token) {
+    if (!revocationStore.isLoaded()) {
+      log.debug("Rejected JWT token, revocations are not loaded yet");
+      return Optional.empty();
+    }
+    try {
+      Claims claims = parseVerifiedClaims(token);
+      if (revocationStore.isRevoked(tokenId(claims, token))) {
+        log.debug("Rejected revoked JWT token");
+        return Optional.empty();
+      }
+      String userId = claims.get(USER_ID_CLAIM, String.class);
+      Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+      if (userId != null
+          && tokenVersion != null
+          && revocationStore.isVersionRevoked(userId, tokenVersion)) {
+        log.debug("Rejected JWT token with a superseded version");
+        return Optional.empty();
+      }
+      return Optional.of(claims);
+    } catch (Exception e) {
+      log.error("Invalid JWT token: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+
   /**
    * Validates the provided JWT token by parsing it and verifying its signature. The token is parsed
-   * using the signing key derived from the predefined secret key. If the token is valid (i.e., it
-   * can be parsed and its signature matches the signing key), the method returns true. If any
-   * exception occurs during the parsing or validation, it logs an error and returns false.
+   * with the shared parser through {@link #parseVerifiedClaims(String)}. If the token is valid
+   * (i.e., it can be parsed and its signature matches the signing key), the method returns true. If
+   * any exception occurs during the parsing or validation, it logs an error and returns false.
    *
    * @param token The JWT token to be validated.
    * @return {@code true} if the token is valid and the signature is correct, {@code false}
    *     otherwise.
    */
   public boolean validateToken(String token) {
-    try {
-      Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token);
-      return true;
-    } catch (Exception e) {
-      log.error("Invalid JWT token: {}", e.getMessage());
-      return false;
-    }
+    return verify(token).isPresent();
   }
 
   /**
@@ -97,17 +214,18 @@ public class JwtUtils {
    * Claims} object to retrieve the subject (username) from the token's claims.
    *
    * @param token The JWT token from which the username (subject) will be extracted.
-   * @return The username (subject) contained in the JWT token, or {@code null} if the token is
-   *     invalid or the subject is not found.
+   * @return The username (subject) contained in the JWT token, or {@code null} if the subject is
+   *     not found.
+   * @throws InvalidTokenException If the token is invalid, expired or revoked.
    */
   public String extractUsername(String token) {
     return extractClaim(token, Claims::getSubject);
   }
 
   /**
-   * Extracts a specific claim from the given JWT token using a claims resolver function. The method
-   * parses the token, retrieves the claims, and applies the provided claims resolver to extract the
-   * desired claim.
+   * Extracts a specific claim from the given JWT token using a claims resolver function. The token
+   * goes through {@link #verify(String)}, so revoked and superseded tokens are rejected like
+   * invalid ones, and the provided claims resolver is applied to its claims.
    *
    * @param <T> The type of the claim to be extracted.
    * @param token The JWT token from which the claim will be extracted.
@@ -115,10 +233,43 @@ public class JwtUtils {
    *     Claims} object. Typically, this could be a method reference like {@link Claims#getSubject}
    *     for the username.
    * @return The extracted claim of type {@code T}.
+   * @throws InvalidTokenException If the token is invalid, expired or revoked.
+   * @throws ServiceUnavailableException If the revocations are still being loaded after a restart.
    */
   public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-    final Claims claims =
-        Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token).getBody();
+    if (!revocationStore.isLoaded()) {
+      throw new ServiceUnavailableException("Authentication is starting up, please retry shortly");
+    }
+    Claims claims =
+        verify(token).orElseThrow(() -> new InvalidTokenException("Invalid or revoked token"));
     return claimsResolver.apply(claims);
   }
+
+  private static final class UntilTokenExpiry implements Expiry<String, Claims> {
+
+    // Upper bound for tokens that carry no expiration claim
+    private static final long MAX_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(EXPIRATION_TIME);
+
+    @Override
+    public long expireAfterCreate(String token, Claims claims, long currentTime) {
+      Date expiration = claims.getExpiration();
+      if (expiration == null) {
+        return MAX_TTL_NANOS;
+      }
+      long remaining = expiration.getTime() - System.currentTimeMillis();
+      return Math.max(0, Math.min(TimeUnit.MILLISECONDS.toNanos(remaining), MAX_TTL_NANOS));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String token, Claims claims, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(
+        String token, Claims claims, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
@@ -0,0 +1,41 @@
+package com.example.soen341_backend.security;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "email_outbox")
+@CompoundIndex(name = "due", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class OutboundEmail {
+
+  @Id private String id;
+
+  private String to;
+  private String subject;
+  private String body;
+
+  private EmailDeliveryStatus status;
+
+  // Number of delivery attempts started so far, incremented when a worker claims the email
+  private int attempts;
+
+  // When the email is next due. While SENDING this is the end of the worker's lease, after which
+  // another worker may take the email over.
+  private Instant nextAttemptAt;
+
+  private Instant createdAt;
+
+  // Delivered emails are kept for a week for troubleshooting, then removed by Mongo's TTL monitor
+  @Indexed(expireAfterSeconds = 7 * 24 * 60 * 60)
+  private Instant sentAt;
+
+  private String lastError;
+}
@@ -0,0 +1,27 @@
+package com.example.soen341_backend.security;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document(collection = "revoked_tokens")
+public class RevokedToken {
+
+  // Token id (jti) or, for tokens issued without one, the SHA-256 of the token. Version floors
+  // are stored under "user:" followed by the user id.
+  @Id private String id;
+
+  // Mongo's TTL monitor deletes the entry once the token could no longer be used anyway
+  @Indexed(expireAfterSeconds = 0)
+  private Instant expiresAt;
+
+  // Set for version floors: tokens of the user with a lower version are revoked
+  private Integer minTokenVersion;
+}
@@ -0,0 +1,12 @@
+package com.example.soen341_backend.security;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RevokedTokenRepository extends MongoRepository<RevokedToken, String> {
+
+  List<RevokedToken> findByExpiresAtAfter(Instant now);
+}
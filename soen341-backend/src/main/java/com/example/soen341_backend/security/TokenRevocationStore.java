@@ -0,0 +1,222 @@
+package com.example.soen341_backend.security;
+
+import com.example.soen341_backend.config.ClusterChangeStreams;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Revoked-token store keyed by token id. Each entry lives only until the revoked token's own
+ * expiry, after which the token would be rejected anyway, so the store stays proportional to the
+ * number of live revoked tokens.
+ *
+ * <p>Reads never lock: an optional Bloom filter answers the common "not revoked" case without
+ * touching the map, and the map itself is a {@link ConcurrentHashMap}. Revocations are persisted in
+ * the {@code revoked_tokens} collection and reloaded at startup so logouts survive restarts. Until
+ * that load has succeeded the store is not {@link #isLoaded() loaded} and token verification fails
+ * closed; the load is retried with a backoff while the database is unreachable. Revocations made on
+ * other nodes arrive through a {@link ClusterChangeStreams change stream} on the collection.
+ */
+@Slf4j
+@Component
+public class TokenRevocationStore {
+
+  private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+  private static final String VERSION_FLOOR_PREFIX = "user:";
+  private static final long MAX_LOAD_RETRY_MILLIS = 30_000;
+
+  private final RevokedTokenRepository revokedTokenRepository;
+  private final MongoTemplate mongoTemplate;
+  private final MongoMappingContext mappingContext;
+  private final boolean bloomFilterEnabled;
+  private final int bloomExpectedInsertions;
+
+  private final Map<String, Long> expiryByTokenId = new ConcurrentHashMap<>();
+  private final Map<String, VersionFloor> versionFloorByUserId = new ConcurrentHashMap<>();
+  private volatile BloomFilter bloomFilter;
+  private volatile boolean loaded;
+
+  public TokenRevocationStore(
+      RevokedTokenRepository revokedTokenRepository,
+      MongoTemplate mongoTemplate,
+      MongoMappingContext mappingContext,
+      ClusterChangeStreams changeStreams,
+      @Value("${jwt.revocation.bloom-filter.enabled:true}") boolean bloomFilterEnabled,
+      @Value("${jwt.revocation.bloom-filter.expected-insertions:100000}")
+          int bloomExpectedInsertions) {
+    this.revokedTokenRepository = revokedTokenRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.mappingContext = mappingContext;
+    this.bloomFilterEnabled = bloomFilterEnabled;
+    this.bloomExpectedInsertions = bloomExpectedInsertions;
+    this.bloomFilter = newBloomFilter();
+    changeStreams.watch("revoked_tokens", this::onChange, this::load);
+  }
+
+  /**
+   * Revokes a token until its expiry and persists the revocation.
+   *
+   * @param tokenId the token id (jti) or token hash.
+   * @param expiresAt when the token expires; revocations of already expired tokens are ignored.
+   */
+  public void revoke(String tokenId, Instant expiresAt) {
+    if (!expiresAt.isAfter(Instant.now())) {
+      return;
+    }
+    remember(tokenId, expiresAt.toEpochMilli());
+    revokedTokenRepository.save(new RevokedToken(tokenId, expiresAt, null));
+  }
+
+  /**
+   * Revokes every token of a user that carries a version lower than {@code minTokenVersion}.
+   *
+   * @param userId the user whose older tokens are revoked.
+   * @param minTokenVersion the lowest token version still accepted.
+   * @param until when the last token affected by this floor expires.
+   */
+  public void revokeVersionsBelow(String userId, int minTokenVersion, Instant until) {
+    versionFloorByUserId.merge(
+        userId,
+        new VersionFloor(minTokenVersion, until.toEpochMilli()),
+        (current, next) -> current.minTokenVersion() >= next.minTokenVersion() ? current : next);
+    revokedTokenRepository.save(
+        new RevokedToken(VERSION_FLOOR_PREFIX + userId, until, minTokenVersion));
+  }
+
+  public boolean isVersionRevoked(String userId, int tokenVersion) {
+    VersionFloor floor = versionFloorByUserId.get(userId);
+    return floor != null
+        && tokenVersion < floor.minTokenVersion()
+        && floor.expiresAtMillis() > System.currentTimeMillis();
+  }
+
+  public boolean isRevoked(String tokenId) {
+    BloomFilter filter = bloomFilter;
+    if (filter != null && !filter.mightContain(tokenId)) {
+      return false;
+    }
+    Long expiry = expiryByTokenId.get(tokenId);
+    return expiry != null && expiry > System.currentTimeMillis();
+  }
+
+  /**
+   * Whether the persisted revocations have been loaded, so a "not revoked" answer can be trusted.
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public int size() {
+    return expiryByTokenId.size();
+  }
+
+  // Synchronized with the rebuild so a revocation can never miss the filter being swapped in
+  private synchronized void remember(String tokenId, long expiresAtMillis) {
+    expiryByTokenId.put(tokenId, expiresAtMillis);
+    if (bloomFilter != null) {
+      bloomFilter.add(tokenId);
+    }
+  }
+
+  /** Drops expired revocations and rebuilds the Bloom filter from the remaining entries. */
+  @Scheduled(fixedDelayString = "${jwt.revocation.sweep-interval-ms:60000}")
+  public synchronized void sweep() {
+    long now = System.currentTimeMillis();
+    expiryByTokenId.values().removeIf(expiry -> expiry <= now);
+    versionFloorByUserId.values().removeIf(floor -> floor.expiresAtMillis() <= now);
+    BloomFilter rebuilt = newBloomFilter();
+    if (rebuilt != null) {
+      expiryByTokenId.keySet().forEach(rebuilt::add);
+    }
+    bloomFilter = rebuilt;
+  }
+
+  // Started with the bean rather than once the application is ready, so the load usually finishes
+  // before the first request arrives
+  @PostConstruct
+  void startLoading() {
+    Thread loader = new Thread(this::loadUntilDone, "token-revocation-load");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  private void loadUntilDone() {
+    long backoff = 1000;
+    while (!load()) {
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      backoff = Math.min(backoff * 2, MAX_LOAD_RETRY_MILLIS);
+    }
+  }
+
+  /**
+   * @return whether the revocations were loaded, false if the load has to be retried.
+   */
+  boolean load() {
+    try {
+      IndexOperations indexOps = mongoTemplate.indexOps(RevokedToken.class);
+      new MongoPersistentEntityIndexResolver(mappingContext)
+          .resolveIndexFor(RevokedToken.class)
+          .forEach(indexOps::ensureIndex);
+
+      int loaded = 0;
+      for (RevokedToken token : revokedTokenRepository.findByExpiresAtAfter(Instant.now())) {
+        apply(token);
+        loaded++;
+      }
+      this.loaded = true;
+      log.info("Loaded {} token revocations", loaded);
+      return true;
+    } catch (Exception e) {
+      log.error(
+          "Loading token revocations failed, tokens are rejected until it succeeds: {}",
+          e.getMessage());
+      return false;
+    }
+  }
+
+  private void apply(RevokedToken token) {
+    long expiresAtMillis = token.getExpiresAt().toEpochMilli();
+    if (token.getMinTokenVersion() != null) {
+      versionFloorByUserId.merge(
+          token.getId().substring(VERSION_FLOOR_PREFIX.length()),
+          new VersionFloor(token.getMinTokenVersion(), expiresAtMillis),
+          (current, next) -> current.minTokenVersion() >= next.minTokenVersion() ? current : next);
+    } else {
+      remember(token.getId(), expiresAtMillis);
+    }
+  }
+
+  // Revocations are only ever saved, so the full document comes with every relevant change
+  private void onChange(ChangeStreamDocument<Document> change) {
+    Document document = change.getFullDocument();
+    if (document != null) {
+      apply(mongoTemplate.getConverter().read(RevokedToken.class, document));
+    }
+  }
+
+  private record VersionFloor(int minTokenVersion, long expiresAtMillis) {}
+
+  private BloomFilter newBloomFilter() {
+    if (!bloomFilterEnabled) {
+      return null;
+    }
+    int expected = Math.max(bloomExpectedInsertions, expiryByTokenId.size() * 2);
+    return new BloomFilter(expected, BLOOM_FALSE_POSITIVE_RATE);
+  }
+}
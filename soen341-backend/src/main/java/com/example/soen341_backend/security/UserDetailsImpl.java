@@ -1,6 +1,7 @@
 package com.example.soen341_backend.security;
 
 import com.example.soen341_backend.user.User;
+import io.jsonwebtoken.Claims;
 import java.util.Collection;
 import java.util.Collections;
 import lombok.AllArgsConstructor;
@@ -12,6 +13,25 @@ public class UserDetailsImpl implements UserDetails {
 
   private final User user;
 
+  /**
+   * Builds the principal from the claims of an already verified token, without loading the user.
+   * The result carries no password and must not be used for credential checks.
+   *
+   * @param claims Verified claims that include the user id and token version.
+   * @return The principal described by the token.
+   */
+  public static UserDetailsImpl fromClaims(Claims claims) {
+    User user = new User();
+    user.setId(claims.get(JwtUtils.USER_ID_CLAIM, String.class));
+    user.setUsername(claims.getSubject());
+    user.setTokenVersion(claims.get(JwtUtils.TOKEN_VERSION_CLAIM, Integer.class));
+    return new UserDetailsImpl(user);
+  }
+
+  public String getUserId() {
+    return user.getId();
+  }
+
   @Override
   public Collection<? extends GrantedAuthority> getAuthorities() {
     return Collections.emptyList();
@@ -2,18 +2,44 @@ package com.example.soen341_backend.security;
 
 import com.example.soen341_backend.user.User;
 import com.example.soen341_backend.user.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-@RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService {
 
   private final UserRepository userRepository;
 
+  // Short-lived copies for request authentication of tokens that carry no user claims
+  private final Cache<String, UserDetails> cachedUserDetails;
+
+  public UserDetailsServiceImpl(
+      UserRepository userRepository,
+      MeterRegistry meterRegistry,
+      @Value("${jwt.user-details-cache.max-size:10000}") long maxSize,
+      @Value("${jwt.user-details-cache.ttl-seconds:60}") long ttlSeconds) {
+    this.userRepository = userRepository;
+    this.cachedUserDetails =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cachedUserDetails, "userDetails");
+  }
+
+  /**
+   * Always reads the user from the database, since this is also what credential checks at login go
+   * through.
+   */
   @Override
   public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
     User user =
@@ -23,4 +49,16 @@ public class UserDetailsServiceImpl implements UserDetailsService {
                 () -> new UsernameNotFoundException("User not found with username: " + username));
     return new UserDetailsImpl(user);
   }
+
+  /**
+   * Same as {@link #loadUserByUsername(String)} but answered from a small TTL cache. Only meant for
+   * authenticating requests that already carry a verified token.
+   */
+  public UserDetails loadCachedUserByUsername(String username) throws UsernameNotFoundException {
+    return cachedUserDetails.get(username, this::loadUserByUsername);
+  }
+
+  public void evict(String username) {
+    cachedUserDetails.invalidate(username);
+  }
 }
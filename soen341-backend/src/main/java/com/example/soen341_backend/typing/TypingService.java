@@ -0,0 +1,119 @@
+package com.example.soen341_backend.typing;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.exceptions.BadRequestException;
+import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.payload.TypingEvent;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Relays "user is typing" indicators. Indicators live in memory only: they are checked against the
+ * cached channel membership, never stored, and broadcast on {@link #topicOf the typing topic} of
+ * their conversation.
+ *
+ * <p>Clients may report typing as often as they like. A start is broadcast when a user starts
+ * typing and repeated at most once per {@code chat.typing.refresh-ms} while they keep going, so
+ * late subscribers catch up; other reports only push the expiry back. A stop is broadcast when the
+ * user stops, sends a message, or has not reported anything for {@code chat.typing.ttl-ms}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TypingService {
+
+  private final ChannelService channelService;
+  private final FanoutSender fanoutSender;
+
+  @Value("${chat.typing.ttl-ms:6000}")
+  private long ttlMillis;
+
+  @Value("${chat.typing.refresh-ms:3000}")
+  private long refreshMillis;
+
+  /** channelId:userId -> user currently typing */
+  private final Map<String, Typist> typists = new ConcurrentHashMap<>();
+
+  public static String topicOf(String channelId) {
+    return "/topic/channel/" + channelId + "/typing";
+  }
+
+  /**
+   * Records a typing report of a user and broadcasts it if it changes what other members see.
+   *
+   * @throws BadRequestException if the channel is missing.
+   * @throws UnauthorizedException if the user is not a member of the conversation.
+   */
+  public void update(String userId, String username, TypingUpdate update) {
+    if (update.channelId() == null) {
+      throw new BadRequestException("A typing update needs a channel");
+    }
+    if (!channelService.isMember(update.channelId(), userId)) {
+      throw new UnauthorizedException("You don't have access to this channel");
+    }
+
+    if (update.typing()) {
+      started(userId, username, update.channelId());
+    } else {
+      stopped(userId, update.channelId());
+    }
+  }
+
+  private void started(String userId, String username, String channelId) {
+    long now = System.currentTimeMillis();
+    boolean[] announce = {false};
+    typists.compute(
+        keyOf(channelId, userId),
+        (key, current) -> {
+          if (current == null || now - current.announcedAt() >= refreshMillis) {
+            announce[0] = true;
+            return new Typist(channelId, userId, username, now, now + ttlMillis);
+          }
+          return new Typist(channelId, userId, username, current.announcedAt(), now + ttlMillis);
+        });
+    if (announce[0]) {
+      publish(channelId, userId, username, true);
+    }
+  }
+
+  /** Clears the indicator of a user in a conversation, if one is shown. */
+  public void stopped(String userId, String channelId) {
+    Typist typist = typists.remove(keyOf(channelId, userId));
+    if (typist != null) {
+      publish(channelId, userId, typist.username(), false);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${chat.typing.sweep-interval-ms:1000}")
+  public void expireStale() {
+    long now = System.currentTimeMillis();
+    typists.forEach(
+        (key, typist) -> {
+          // Only the entry seen here: a report that just came in keeps the indicator alive
+          if (typist.expiresAt() <= now && typists.remove(key, typist)) {
+            publish(typist.channelId(), typist.userId(), typist.username(), false);
+          }
+        });
+  }
+
+  private void publish(String channelId, String userId, String username, boolean typing) {
+    try {
+      fanoutSender.send(topicOf(channelId), new TypingEvent(channelId, userId, username, typing));
+    } catch (RuntimeException e) {
+      log.warn("Publishing typing of user {} failed: {}", userId, e.getMessage());
+    }
+  }
+
+  private static String keyOf(String channelId, String userId) {
+    return channelId + ":" + userId;
+  }
+
+  private record Typist(
+      String channelId, String userId, String username, long announcedAt, long expiresAt) {}
+}
@@ -0,0 +1,7 @@
+package com.example.soen341_backend.typing;
+
+/**
+ * A client reporting that its user started or stopped typing in a conversation. Clients resend
+ * {@code typing = true} every few seconds while the user keeps typing.
+ */
+public record TypingUpdate(String channelId, boolean typing) {}
@@ -0,0 +1,208 @@
+package com.example.soen341_backend.user;
+
+import com.example.soen341_backend.security.ChatPrincipal;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Keeps track of who is online from the STOMP sessions open on this node. A user is online while
+ * they have at least one session; every inbound frame, heartbeats included, counts as activity, and
+ * sessions that stay silent for longer than {@code chat.presence.stale-after-ms} are dropped even
+ * if their disconnect event was lost.
+ *
+ * <p>Only transitions between online and offline are published on {@link #PRESENCE_TOPIC} and
+ * recorded. Recorded changes are coalesced per user and written to the {@code users} collection in
+ * one bulk update per flush interval, so reconnect churn costs at most one write per user.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+  public static final String PRESENCE_TOPIC = "/topic/presence";
+
+  private final MongoTemplate mongoTemplate;
+  private final SimpMessageSendingOperations messagingTemplate;
+  private final long staleAfterMillis;
+
+  private final Map<String, SessionPresence> sessionsById = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> sessionIdsByUserId = new ConcurrentHashMap<>();
+  private final Map<String, PresenceUpdate> pendingWrites = new ConcurrentHashMap<>();
+
+  // The messaging template is built by the broker configuration, which itself needs this service
+  public PresenceService(
+      MongoTemplate mongoTemplate,
+      @Lazy SimpMessageSendingOperations messagingTemplate,
+      @Value("${chat.presence.stale-after-ms:60000}") long staleAfterMillis) {
+    this.mongoTemplate = mongoTemplate;
+    this.messagingTemplate = messagingTemplate;
+    this.staleAfterMillis = staleAfterMillis;
+  }
+
+  @EventListener
+  public void onSessionConnected(SessionConnectedEvent event) {
+    String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+    if (sessionId != null && event.getUser() instanceof ChatPrincipal principal) {
+      connect(sessionId, principal);
+    }
+  }
+
+  @EventListener
+  public void onSessionDisconnect(SessionDisconnectEvent event) {
+    disconnect(event.getSessionId());
+  }
+
+  /** Records activity on a session. Called for every inbound frame, so it only touches memory. */
+  public void touch(String sessionId) {
+    SessionPresence session = sessionsById.get(sessionId);
+    if (session != null) {
+      session.lastSeenMillis = System.currentTimeMillis();
+    }
+  }
+
+  public boolean isOnline(String userId) {
+    return sessionIdsByUserId.containsKey(userId);
+  }
+
+  public Set<String> getOnlineUserIds() {
+    return Set.copyOf(sessionIdsByUserId.keySet());
+  }
+
+  /**
+   * Queues a status change that does not come from a session, such as logging in or out, for the
+   * next batched write.
+   */
+  public void recordStatus(String userId, Status status) {
+    pendingWrites.put(userId, new PresenceUpdate(userId, null, status, Instant.now()));
+  }
+
+  void connect(String sessionId, ChatPrincipal principal) {
+    long now = System.currentTimeMillis();
+    sessionsById.put(
+        sessionId, new SessionPresence(principal.getUserId(), principal.getUsername(), now));
+
+    boolean[] cameOnline = {false};
+    sessionIdsByUserId.compute(
+        principal.getUserId(),
+        (id, sessionIds) -> {
+          if (sessionIds == null) {
+            sessionIds = ConcurrentHashMap.newKeySet();
+            cameOnline[0] = true;
+          }
+          sessionIds.add(sessionId);
+          return sessionIds;
+        });
+    if (cameOnline[0]) {
+      changed(principal.getUserId(), principal.getUsername(), Status.ONLINE, now);
+    }
+  }
+
+  void disconnect(String sessionId) {
+    SessionPresence session = sessionsById.remove(sessionId);
+    if (session == null) {
+      return;
+    }
+    boolean[] wentOffline = {false};
+    sessionIdsByUserId.computeIfPresent(
+        session.userId,
+        (id, sessionIds) -> {
+          sessionIds.remove(sessionId);
+          wentOffline[0] = sessionIds.isEmpty();
+          return wentOffline[0] ? null : sessionIds;
+        });
+    if (wentOffline[0]) {
+      changed(session.userId, session.username, Status.OFFLINE, session.lastSeenMillis);
+    }
+  }
+
+  private void changed(String userId, String username, Status status, long atMillis) {
+    PresenceUpdate update =
+        new PresenceUpdate(userId, username, status, Instant.ofEpochMilli(atMillis));
+    pendingWrites.put(userId, update);
+    try {
+      messagingTemplate.convertAndSend(PRESENCE_TOPIC, update);
+    } catch (RuntimeException e) {
+      log.warn("Publishing presence of user {} failed: {}", userId, e.getMessage());
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${chat.presence.sweep-interval-ms:15000}")
+  public void sweepStaleSessions() {
+    if (staleAfterMillis <= 0) {
+      return;
+    }
+    long cutoff = System.currentTimeMillis() - staleAfterMillis;
+    sessionsById.forEach(
+        (sessionId, session) -> {
+          if (session.lastSeenMillis < cutoff) {
+            log.debug("Dropping silent session {} of user {}", sessionId, session.userId);
+            disconnect(sessionId);
+          }
+        });
+  }
+
+  @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:5000}")
+  public void flush() {
+    if (pendingWrites.isEmpty()) {
+      return;
+    }
+    Map<String, PresenceUpdate> batch = new HashMap<>();
+    for (String userId : pendingWrites.keySet()) {
+      PresenceUpdate update = pendingWrites.remove(userId);
+      if (update != null) {
+        batch.put(userId, update);
+      }
+    }
+
+    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+    batch.forEach(
+        (userId, update) ->
+            bulk.updateOne(
+                new Query(Criteria.where("_id").is(userId)),
+                new Update()
+                    .set("status", update.status())
+                    .set("lastActiveAt", update.lastActiveAt())));
+    try {
+      bulk.execute();
+    } catch (RuntimeException e) {
+      // Keep the changes for the next flush unless a newer one has been recorded since
+      batch.forEach(pendingWrites::putIfAbsent);
+      log.warn("Writing presence of {} users failed: {}", batch.size(), e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    flush();
+  }
+
+  private static final class SessionPresence {
+    private final String userId;
+    private final String username;
+    private volatile long lastSeenMillis;
+
+    private SessionPresence(String userId, String username, long lastSeenMillis) {
+      this.userId = userId;
+      this.username = username;
+      this.lastSeenMillis = lastSeenMillis;
+    }
+  }
+}
@@ -0,0 +1,8 @@
+package com.example.soen341_backend.user;
+
+import java.time.Instant;
+
+/**
+ * Published on {@link PresenceService#PRESENCE_TOPIC} whenever a user comes online or goes away.
+ */
+public record PresenceUpdate(String userId, String username, Status status, Instant lastActiveAt) {}
@@ -43,4 +43,7 @@ public class User {
   private Set<String> adminsForWhichChannels = new HashSet<>();
   private Instant createdAt;
   private Instant lastActiveAt;
+
+  // Embedded in issued tokens; bumping it invalidates every token issued before
+  private int tokenVersion;
 }
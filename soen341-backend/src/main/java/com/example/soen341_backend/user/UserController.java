@@ -1,8 +1,10 @@
 package com.example.soen341_backend.user;
 
 import com.example.soen341_backend.security.JwtUtils;
+import io.jsonwebtoken.Claims;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import lombok.AllArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,23 +20,29 @@ public class UserController {
   private final JwtUtils jwtUtils;
 
   @GetMapping
-  public List<User> getAllUsers() {
+  public List<UserSummary> getAllUsers() {
     return userService.getAllUsers();
   }
 
   @GetMapping("/{id}")
-  public User getUserById(@PathVariable String id) {
-    return userService.getUserById(id);
+  public UserSummary getUserById(@PathVariable String id) {
+    return userService.getUserSummary(id);
   }
 
+  // Users without a DM with the given user, by username. Pass the last username of a page as
+  // "after" to get the next one.
   @GetMapping("/get-other-users/{userId}")
-  public List<User> getUsersByIds(@PathVariable String userId) {
-    return userService.getUsersWithNoDmWithUser(userId);
+  public List<UserSummary> getUsersByIds(
+      @PathVariable String userId,
+      @RequestParam(required = false) String prefix,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int limit) {
+    return userService.getUsersWithNoDmWithUser(userId, prefix, after, limit);
   }
 
   @PutMapping("/{id}")
-  public User updateUser(@PathVariable String id, @RequestBody User userDetails) {
-    return userService.updateUser(id, userDetails);
+  public UserDetail updateUser(@PathVariable String id, @RequestBody User userDetails) {
+    return UserDetail.of(userService.updateUser(id, userDetails));
   }
 
   @DeleteMapping("/{id}")
@@ -50,7 +58,7 @@ public class UserController {
 
     if (userService.authenticateUser(username, password)) {
       User user = userService.getUserByUsername(username);
-      return ResponseEntity.ok(user);
+      return ResponseEntity.ok(UserDetail.of(user));
     } else {
       return ResponseEntity.status(401).body("Invalid credentials");
     }
@@ -72,18 +80,18 @@ public class UserController {
 
     String token = authHeader.substring(7); // Remove "Bearer " prefix
 
-    // Validate the token
-    if (!jwtUtils.validateToken(token)) {
+    // Validate the token and get the username from it in one pass
+    Optional<Claims> claims = jwtUtils.verify(token);
+    if (claims.isEmpty()) {
       return ResponseEntity.status(401).body("Invalid or expired token");
     }
 
-    // Get the username from the token
-    String username = jwtUtils.extractUsername(token);
+    String username = claims.get().getSubject();
 
     try {
       // Get the user details
       User user = userService.getUserByUsername(username);
-      return ResponseEntity.ok(user);
+      return ResponseEntity.ok(UserDetail.of(user));
     } catch (Exception e) {
       return ResponseEntity.status(404).body("User not found");
     }
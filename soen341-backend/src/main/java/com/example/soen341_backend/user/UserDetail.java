@@ -0,0 +1,35 @@
+package com.example.soen341_backend.user;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * What a user may see about their own account. Never carries the password hash or the verification
+ * and reset codes.
+ */
+public record UserDetail(
+    String id,
+    String username,
+    String email,
+    boolean verified,
+    Status status,
+    Set<String> channelIds,
+    Set<String> directMessageIds,
+    Set<String> adminsForWhichChannels,
+    Instant createdAt,
+    Instant lastActiveAt) {
+
+  public static UserDetail of(User user) {
+    return new UserDetail(
+        user.getId(),
+        user.getUsername(),
+        user.getEmail(),
+        user.isVerified(),
+        user.getStatus(),
+        user.getChannelIds(),
+        user.getDirectMessageIds(),
+        user.getAdminsForWhichChannels(),
+        user.getCreatedAt(),
+        user.getLastActiveAt());
+  }
+}
@@ -0,0 +1,69 @@
+package com.example.soen341_backend.user;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public interface UserRepositoryCustom {
+
+  /**
+   * Loads only the ids of the users the given user already has a direct message with.
+   *
+   * @return the ids, or empty if the user does not exist.
+   */
+  Optional<Set<String>> findDirectMessageIds(String userId);
+
+  /**
+   * Loads only the ids of the channels the given user is a member of.
+   *
+   * @return the ids, or empty if the user does not exist.
+   */
+  Optional<Set<String>> findChannelIds(String userId);
+
+  Optional<UserSummary> findSummaryById(String userId);
+
+  /** Loads the summaries of the given users, in no particular order. */
+  List<UserSummary> findSummariesByIds(Collection<String> userIds);
+
+  /** Loads the summaries of all users, ordered by username. */
+  List<UserSummary> findAllSummaries();
+
+  /**
+   * Loads up to {@code limit} verified users whose id is not in {@code excludedIds}, ordered by
+   * username, using keyset pagination on the unique username index.
+   *
+   * @param usernamePrefix optional case-sensitive prefix the username must start with.
+   * @param afterUsername optional cursor: only users sorting after this username are returned.
+   */
+  List<UserSummary> findVerifiedUsersExcluding(
+      Collection<String> excludedIds, String usernamePrefix, String afterUsername, int limit);
+
+  /**
+   * Atomically adds a channel to the user's channels with {@code $addToSet}.
+   *
+   * @return whether the user exists.
+   */
+  boolean addChannelId(String userId, String channelId);
+
+  /**
+   * Atomically removes a channel from the user's channels with {@code $pull}.
+   *
+   * @return whether the user exists.
+   */
+  boolean removeChannelId(String userId, String channelId);
+
+  /**
+   * Atomically records a direct message with another user with {@code $addToSet}.
+   *
+   * @return whether the user exists.
+   */
+  boolean addDirectMessageId(String userId, String targetUserId);
+
+  /**
+   * Atomically adds a channel to the channels the user administers with {@code $addToSet}.
+   *
+   * @return whether the user exists.
+   */
+  boolean addAdminChannel(String userId, String channelId);
+}
@@ -0,0 +1,109 @@
+package com.example.soen341_backend.user;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ExecutableFindOperation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@RequiredArgsConstructor
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+  private final MongoTemplate mongoTemplate;
+
+  @Override
+  public Optional<Set<String>> findDirectMessageIds(String userId) {
+    return findIdSet(userId, "directMessageIds", User::getDirectMessageIds);
+  }
+
+  @Override
+  public Optional<Set<String>> findChannelIds(String userId) {
+    return findIdSet(userId, "channelIds", User::getChannelIds);
+  }
+
+  @Override
+  public boolean addChannelId(String userId, String channelId) {
+    return update(userId, new Update().addToSet("channelIds", channelId));
+  }
+
+  @Override
+  public boolean removeChannelId(String userId, String channelId) {
+    return update(userId, new Update().pull("channelIds", channelId));
+  }
+
+  @Override
+  public boolean addDirectMessageId(String userId, String targetUserId) {
+    return update(userId, new Update().addToSet("directMessageIds", targetUserId));
+  }
+
+  @Override
+  public boolean addAdminChannel(String userId, String channelId) {
+    return update(userId, new Update().addToSet("adminsForWhichChannels", channelId));
+  }
+
+  private boolean update(String userId, Update update) {
+    return mongoTemplate
+            .updateFirst(new Query(Criteria.where("_id").is(userId)), update, User.class)
+            .getMatchedCount()
+        > 0;
+  }
+
+  @Override
+  public Optional<UserSummary> findSummaryById(String userId) {
+    return summaries(new Query(Criteria.where("_id").is(userId))).one();
+  }
+
+  @Override
+  public List<UserSummary> findSummariesByIds(Collection<String> userIds) {
+    return summaries(new Query(Criteria.where("_id").in(userIds))).all();
+  }
+
+  @Override
+  public List<UserSummary> findAllSummaries() {
+    return summaries(new Query().with(Sort.by("username"))).all();
+  }
+
+  @Override
+  public List<UserSummary> findVerifiedUsersExcluding(
+      Collection<String> excludedIds, String usernamePrefix, String afterUsername, int limit) {
+    Criteria username = Criteria.where("username");
+    boolean filtered = false;
+    if (usernamePrefix != null && !usernamePrefix.isEmpty()) {
+      // An anchored, case-sensitive prefix is answered by a range scan of the username index
+      username = username.regex("^" + Pattern.quote(usernamePrefix));
+      filtered = true;
+    }
+    if (afterUsername != null && !afterUsername.isEmpty()) {
+      username = username.gt(afterUsername);
+      filtered = true;
+    }
+
+    Criteria criteria = Criteria.where("verified").is(true).and("_id").nin(excludedIds);
+    if (filtered) {
+      criteria = new Criteria().andOperator(criteria, username);
+    }
+
+    return summaries(new Query(criteria).with(Sort.by("username")).limit(limit)).all();
+  }
+
+  private Optional<Set<String>> findIdSet(
+      String userId, String field, Function<User, Set<String>> getter) {
+    Query query = new Query(Criteria.where("_id").is(userId));
+    query.fields().include(field);
+    return Optional.ofNullable(mongoTemplate.findOne(query, User.class))
+        .map(user -> getter.apply(user) == null ? Set.of() : getter.apply(user));
+  }
+
+  // Only the fields of the summary are projected from the users collection
+  private ExecutableFindOperation.TerminatingFind<UserSummary> summaries(Query query) {
+    return mongoTemplate.query(User.class).as(UserSummary.class).matching(query);
+  }
+}
@@ -1,11 +1,16 @@
 package com.example.soen341_backend.user;
 
 import com.example.soen341_backend.channel.ChannelRepository;
+import com.example.soen341_backend.config.ClusterUserRegistry;
+import com.example.soen341_backend.exceptions.BadRequestException;
 import com.example.soen341_backend.exceptions.ResourceNotFoundException;
-import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.security.UserDetailsServiceImpl;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 import lombok.AllArgsConstructor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -14,17 +19,24 @@ import org.springframework.stereotype.Service;
 @AllArgsConstructor
 public class UserService {
 
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  public static final int MAX_PAGE_SIZE = 200;
+
   private final UserRepository userRepository;
   private final ChannelRepository channelRepository;
   private final PasswordEncoder passwordEncoder;
+  private final JwtUtils jwtUtils;
+  private final PresenceService presenceService;
+  private final UserDetailsServiceImpl userDetailsService;
+  private final ClusterUserRegistry clusterUserRegistry;
 
   public void saveUser(User user) {
     user.setStatus(Status.ONLINE);
     userRepository.save(user);
   }
 
-  public List<User> getAllUsers() {
-    return userRepository.findAll();
+  public List<UserSummary> getAllUsers() {
+    return userRepository.findAllSummaries();
   }
 
   public User getUserById(String id) {
@@ -33,6 +45,22 @@ public class UserService {
         .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + id));
   }
 
+  public UserSummary getUserSummary(String id) {
+    return userRepository
+        .findSummaryById(id)
+        .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + id));
+  }
+
+  public List<UserSummary> getUserSummaries(Collection<String> userIds) {
+    return userRepository.findSummariesByIds(userIds);
+  }
+
+  public Set<String> getChannelIds(String userId) {
+    return userRepository
+        .findChannelIds(userId)
+        .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+  }
+
   public User getUserByUsername(String username) {
     return userRepository
         .findByUsername(username)
@@ -42,79 +70,75 @@ public class UserService {
 
   public User updateUser(String id, User userDetails) {
     User user = getUserById(id);
+    String previousUsername = user.getUsername();
 
     user.setUsername(userDetails.getUsername());
     user.setEmail(userDetails.getEmail());
 
-    if (userDetails.getPassword() != null && !userDetails.getPassword().isEmpty()) {
+    boolean passwordChanged =
+        userDetails.getPassword() != null && !userDetails.getPassword().isEmpty();
+    if (passwordChanged) {
       user.setPassword(passwordEncoder.encode(userDetails.getPassword()));
+      user.setTokenVersion(user.getTokenVersion() + 1);
     }
 
-    return userRepository.save(user);
+    User savedUser = userRepository.save(user);
+    if (passwordChanged) {
+      jwtUtils.revokeTokensBefore(savedUser);
+    }
+    // Requests must not keep authenticating against the old credentials or name
+    userDetailsService.evict(previousUsername);
+    userDetailsService.evict(savedUser.getUsername());
+    return savedUser;
   }
 
   public void deleteUser(String userId) {
+    Optional<UserSummary> user = userRepository.findSummaryById(userId);
     userRepository.deleteById(userId);
+    user.ifPresent(summary -> userDetailsService.evict(summary.username()));
   }
 
   public void addChannelToUser(String userId, String channelId) {
-    User user = getUserById(userId);
-
-    user.getChannelIds().add(channelId);
-
-    userRepository.save(user);
+    if (!userRepository.addChannelId(userId, channelId)) {
+      throw new ResourceNotFoundException("User not found with id: " + userId);
+    }
   }
 
   public void addAdminChannelToUser(String userId, String channelId) {
-    User user = getUserById(userId);
-
-    user.getAdminsForWhichChannels().add(channelId);
-
-    userRepository.save(user);
-  }
-
-  public boolean isAdmin(String userId, String channelId) {
-    User user = getUserById(userId);
-
-    return user.getAdminsForWhichChannels().contains(channelId);
-  }
-
-  public void validateAdminRole(String userId, String channelId) {
-    if (!isAdmin(userId, channelId)) {
-      throw new UnauthorizedException("You don't have permission to perform this action");
+    if (!userRepository.addAdminChannel(userId, channelId)) {
+      throw new ResourceNotFoundException("User not found with id: " + userId);
     }
   }
 
-  public List<User> getUsersWithNoDmWithUser(String userId) {
-    User activeUser =
-        userRepository
-            .findById(userId)
-            .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
-
-    List<User> verifiedUsers = userRepository.findByVerified(true);
+  public List<UserSummary> getUsersWithNoDmWithUser(
+      String userId, String usernamePrefix, String afterUsername, int limit) {
+    if (limit < 1) {
+      throw new BadRequestException("Page limit must be positive");
+    }
 
-    System.out.println("Dms ids: " + activeUser.getDirectMessageIds());
+    // Only the ids are read from the active user, the filtering happens in the database
+    Set<String> excludedIds =
+        new HashSet<>(
+            userRepository
+                .findDirectMessageIds(userId)
+                .orElseThrow(
+                    () -> new ResourceNotFoundException("User not found with id: " + userId)));
+    excludedIds.add(userId);
 
-    return verifiedUsers.stream()
-        .filter(user -> !user.getId().equals(userId))
-        .filter(user -> !activeUser.getDirectMessageIds().contains(user.getId()))
-        .collect(Collectors.toList());
+    return userRepository.findVerifiedUsersExcluding(
+        excludedIds, usernamePrefix, afterUsername, Math.min(limit, MAX_PAGE_SIZE));
   }
 
-  public User removeChannelFromUser(String userId, String channelId) {
-    User user = getUserById(userId);
-
-    user.getChannelIds().remove(channelId);
-
-    return userRepository.save(user);
+  public void removeChannelFromUser(String userId, String channelId) {
+    if (!userRepository.removeChannelId(userId, channelId)) {
+      throw new ResourceNotFoundException("User not found with id: " + userId);
+    }
   }
 
-  public User addDirectMessageToUser(String userId, String targetUserId) {
-    User user = getUserById(userId);
-
-    user.getDirectMessageIds().add(targetUserId);
-
-    return userRepository.save(user);
+  public void addDirectMessageToUser(String userId, String targetUserId) {
+    if (!userRepository.addDirectMessageId(userId, targetUserId)) {
+      throw new ResourceNotFoundException("User not found with id: " + userId);
+    }
   }
 
   public boolean authenticateUser(String username, String password) {
@@ -123,17 +147,13 @@ public class UserService {
     return user.filter(value -> passwordEncoder.matches(password, value.getPassword())).isPresent();
   }
 
+  // Written with the next presence batch instead of a read-modify-write of the user
   public void updateOnlineStatus(String userId, Status status) {
-    userRepository
-        .findById(userId)
-        .ifPresent(
-            user -> {
-              user.setStatus(status);
-              userRepository.save(user);
-            });
+    presenceService.recordStatus(userId, status);
   }
 
-  public List<User> findConnectedUsers() {
-    return userRepository.findAllByStatus(Status.ONLINE);
+  // Answered from the sessions connected to any node rather than a scan of the users collection
+  public List<UserSummary> findConnectedUsers() {
+    return userRepository.findSummariesByIds(clusterUserRegistry.getConnectedUserIds());
   }
 }
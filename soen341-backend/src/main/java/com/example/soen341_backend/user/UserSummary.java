@@ -0,0 +1,12 @@
+package com.example.soen341_backend.user;
+
+import java.time.Instant;
+
+/** Public profile of a user, as shown in member lists, pickers and message headers. */
+public record UserSummary(String id, String username, Status status, Instant lastActiveAt) {
+
+  public static UserSummary of(User user) {
+    return new UserSummary(
+        user.getId(), user.getUsername(), user.getStatus(), user.getLastActiveAt());
+  }
+}
@@ -0,0 +1,76 @@
+package com.example.soen341_backend.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.message.Message;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+class ChannelDeletionTests {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final ChannelDeletionJob channelDeletionJob =
+      new ChannelDeletionJob(
+          mongoTemplate, new MongoMappingContext(), new SimpleMeterRegistry(), 100, 0, 60_000);
+
+  @Test
+  void jobDeletesTheChannelBeforeCleaningUpAfterIt() {
+    when(mongoTemplate.remove(any(Query.class), any(Class.class)))
+        .thenReturn(DeleteResult.acknowledged(0));
+    when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(User.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+    when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of());
+
+    channelDeletionJob.run(deletion("c1", "admin"));
+
+    InOrder order = inOrder(mongoTemplate);
+    order.verify(mongoTemplate).remove(any(Query.class), eq(Channel.class));
+    order.verify(mongoTemplate).updateMulti(any(Query.class), any(Update.class), eq(User.class));
+  }
+
+  @Test
+  void onlyTheRequesterCanReadTheStatusOfADeletedChannel() {
+    ChannelDeletionJob job = mock(ChannelDeletionJob.class);
+    ChannelService channelService =
+        new ChannelService(
+            mock(ChannelRepository.class),
+            mock(UserService.class),
+            mock(ChannelMembershipCache.class),
+            mock(MembershipJournal.class),
+            job,
+            mock(DirectMessageChannelCache.class),
+            mock(DirectMessageKeyInitializer.class));
+    when(job.getStatus("c1")).thenReturn(Optional.of(deletion("c1", "admin")));
+
+    assertEquals("c1", channelService.getDeletionStatus("c1", "admin").getChannelId());
+    assertThrows(
+        UnauthorizedException.class, () -> channelService.getDeletionStatus("c1", "someone"));
+    assertThrows(UnauthorizedException.class, () -> channelService.deleteChannel("c1", "someone"));
+  }
+
+  private static ChannelDeletion deletion(String channelId, String requestedBy) {
+    return ChannelDeletion.builder()
+        .channelId(channelId)
+        .requestedBy(requestedBy)
+        .status(ChannelDeletionStatus.RUNNING)
+        .build();
+  }
+}
@@ -0,0 +1,204 @@
+package com.example.soen341_backend.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserRepository;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Hammers the membership paths from many threads against a real MongoDB and checks that no join or
+ * leave is lost and that channel and user documents agree afterwards. Skipped when no database is
+ * reachable at {@code SOEN341_MONGODB_URI}.
+ */
+@SpringBootTest
+class ChannelMembershipConcurrencyTests {
+
+  private static final int THREADS = 32;
+  private static final int USERS = 200;
+
+  @Autowired private ChannelService channelService;
+  @Autowired private ChannelRepository channelRepository;
+  @Autowired private UserRepository userRepository;
+  @Autowired private MongoTemplate mongoTemplate;
+
+  private final List<String> userIds = new ArrayList<>();
+  private String channelId;
+
+  @BeforeAll
+  static void requireDatabase() {
+    String uri = System.getenv().getOrDefault("SOEN341_MONGODB_URI", "mongodb://localhost:27017");
+    MongoClientSettings settings =
+        MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(uri))
+            .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(2, TimeUnit.SECONDS))
+            .build();
+    boolean reachable;
+    try (MongoClient client = MongoClients.create(settings)) {
+      client.getDatabase("admin").runCommand(new Document("ping", 1));
+      reachable = true;
+    } catch (RuntimeException e) {
+      reachable = false;
+    }
+    assumeTrue(reachable, "MongoDB is not reachable, skipping membership stress test");
+  }
+
+  @AfterEach
+  void cleanUp() {
+    if (channelId != null) {
+      channelRepository.deleteById(channelId);
+      mongoTemplate.remove(
+          new Query(Criteria.where("channelId").is(channelId)), MembershipChange.class);
+    }
+    userRepository.deleteAllById(userIds);
+  }
+
+  @Test
+  void concurrentJoinsAreNotLost() throws Exception {
+    String ownerId = createUsers(1).get(0);
+    Channel channel = createChannel(ownerId);
+    List<String> joiners = createUsers(USERS);
+
+    // Half join directly, half through the invite code, all at once
+    runConcurrently(
+        joiners,
+        (index, userId) -> {
+          if (index % 2 == 0) {
+            channelService.addUserToChannel(channelId, userId);
+          } else {
+            channelService.joinChannelByInviteCode(channel.getInviteCode(), userId);
+          }
+        });
+
+    Channel stored = channelRepository.findById(channelId).orElseThrow();
+    assertEquals(USERS + 1, stored.getMembers().size());
+    assertTrue(stored.getMembers().containsAll(joiners));
+    assertInStep(joiners);
+  }
+
+  @Test
+  void concurrentJoinsAndLeavesStayInStep() throws Exception {
+    String ownerId = createUsers(1).get(0);
+    createChannel(ownerId);
+    List<String> leavers = createUsers(USERS / 2);
+    leavers.forEach(userId -> channelService.addUserToChannel(channelId, userId));
+    List<String> joiners = createUsers(USERS / 2);
+
+    List<String> everyone = new ArrayList<>(leavers);
+    everyone.addAll(joiners);
+    Set<String> leaving = new HashSet<>(leavers);
+    runConcurrently(
+        everyone,
+        (index, userId) -> {
+          if (leaving.contains(userId)) {
+            channelService.removeUserFromChannel(channelId, userId, userId);
+          } else {
+            channelService.addUserToChannel(channelId, userId);
+          }
+        });
+
+    Set<String> members = channelRepository.findById(channelId).orElseThrow().getMembers();
+    assertEquals(Set.of(ownerId), difference(members, joiners));
+    assertTrue(members.containsAll(joiners));
+    assertInStep(everyone);
+  }
+
+  private void assertInStep(List<String> ids) {
+    Set<String> members = channelRepository.findById(channelId).orElseThrow().getMembers();
+    for (User user : userRepository.findAllById(ids)) {
+      assertEquals(
+          members.contains(user.getId()),
+          user.getChannelIds().contains(channelId),
+          "Channel and user disagree on the membership of " + user.getId());
+    }
+  }
+
+  private Channel createChannel(String ownerId) {
+    Channel channel = new Channel();
+    channel.setName("stress-" + UUID.randomUUID());
+    Channel created = channelService.createChannel(channel, ownerId);
+    channelId = created.getId();
+    return created;
+  }
+
+  private List<String> createUsers(int count) {
+    List<User> users = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String name = "stress-" + UUID.randomUUID();
+      users.add(
+          User.builder()
+              .username(name)
+              .email(name + "@example.com")
+              .password("unused")
+              .verified(true)
+              .channelIds(new HashSet<>())
+              .directMessageIds(new HashSet<>())
+              .adminsForWhichChannels(new HashSet<>())
+              .build());
+    }
+    List<String> ids = userRepository.saveAll(users).stream().map(User::getId).toList();
+    userIds.addAll(ids);
+    return ids;
+  }
+
+  private static void runConcurrently(List<String> userIds, MembershipAction action)
+      throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < userIds.size(); i++) {
+        int index = i;
+        results.add(
+            pool.submit(
+                () -> {
+                  start.await();
+                  action.apply(index, userIds.get(index));
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        // Surfaces any exception thrown by a worker
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static Set<String> difference(Set<String> members, List<String> excluded) {
+    Set<String> rest = new HashSet<>(members);
+    excluded.forEach(rest::remove);
+    return rest;
+  }
+
+  @FunctionalInterface
+  private interface MembershipAction {
+    void apply(int index, String userId) throws Exception;
+  }
+}
@@ -0,0 +1,114 @@
+package com.example.soen341_backend.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.message.Message;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+class DirectMessageChannelTests {
+
+  private static final String PAIR_KEY = Message.conversationKey("u1", "u2");
+
+  private final ChannelRepository channelRepository = mock(ChannelRepository.class);
+  private final UserService userService = mock(UserService.class);
+  private final DirectMessageKeyInitializer directMessageKeyInitializer =
+      mock(DirectMessageKeyInitializer.class);
+
+  private DirectMessageChannelCache directMessageChannelCache;
+  private ChannelService channelService;
+
+  @BeforeEach
+  void setUp() {
+    directMessageChannelCache = new DirectMessageChannelCache(new SimpleMeterRegistry(), 100);
+    channelService =
+        new ChannelService(
+            channelRepository,
+            userService,
+            mock(ChannelMembershipCache.class),
+            mock(MembershipJournal.class),
+            mock(ChannelDeletionJob.class),
+            directMessageChannelCache,
+            directMessageKeyInitializer);
+    when(channelRepository.findByDirectMessageKey(PAIR_KEY)).thenReturn(Optional.empty());
+  }
+
+  @Test
+  void legacyKeylessChannelIsReusedInsteadOfCreatingAnother() {
+    Channel legacy = directMessage("legacy");
+    when(channelRepository.claimLegacyDirectMessage(PAIR_KEY, "u2", "u1"))
+        .thenReturn(Optional.of(legacy));
+
+    assertEquals("legacy", channelService.getOrCreateDirectMessageChannelId("u2", "u1"));
+
+    verify(channelRepository, never()).upsertDirectMessage(any());
+    assertEquals("legacy", directMessageChannelCache.get(PAIR_KEY));
+  }
+
+  @Test
+  void pairWithoutAnyChannelGetsOneUpserted() {
+    when(channelRepository.claimLegacyDirectMessage(PAIR_KEY, "u1", "u2"))
+        .thenReturn(Optional.empty());
+    when(userService.getUserById("u1")).thenReturn(User.builder().id("u1").username("a").build());
+    when(userService.getUserById("u2")).thenReturn(User.builder().id("u2").username("b").build());
+    when(channelRepository.upsertDirectMessage(any())).thenReturn(directMessage("created"));
+
+    assertEquals("created", channelService.getOrCreateDirectMessageChannelId("u1", "u2"));
+    assertEquals("created", directMessageChannelCache.get(PAIR_KEY));
+  }
+
+  @Test
+  void keylessChannelsAreNotScannedForOnceTheBackfillFinished() {
+    when(directMessageKeyInitializer.isBackfilled()).thenReturn(true);
+    when(userService.getUserById("u1")).thenReturn(User.builder().id("u1").username("a").build());
+    when(userService.getUserById("u2")).thenReturn(User.builder().id("u2").username("b").build());
+    when(channelRepository.upsertDirectMessage(any())).thenReturn(directMessage("created"));
+
+    assertEquals("created", channelService.getOrCreateDirectMessageChannelId("u1", "u2"));
+    verify(channelRepository, never()).claimLegacyDirectMessage(any(), any(), any());
+  }
+
+  @Test
+  void losingTheKeyToAConcurrentClaimReturnsTheKeyedChannel() {
+    MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    when(mongoTemplate.findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Channel.class)))
+        .thenThrow(new DuplicateKeyException("direct_message_key"));
+    when(mongoTemplate.findOne(any(Query.class), eq(Channel.class)))
+        .thenReturn(directMessage("keyed"));
+
+    Optional<Channel> claimed =
+        new ChannelRepositoryCustomImpl(mongoTemplate)
+            .claimLegacyDirectMessage(PAIR_KEY, "u1", "u2");
+
+    assertEquals("keyed", claimed.orElseThrow().getId());
+  }
+
+  private static Channel directMessage(String id) {
+    Channel channel = new Channel();
+    channel.setId(id);
+    channel.setDirectMessage(true);
+    channel.setDirectMessageMembers(Set.of("u1", "u2"));
+    channel.setMembers(Set.of("u1", "u2"));
+    return channel;
+  }
+}
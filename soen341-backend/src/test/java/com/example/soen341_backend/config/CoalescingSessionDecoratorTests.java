@@ -0,0 +1,105 @@
+package com.example.soen341_backend.config;
+
+import static com.example.soen341_backend.config.SlowConsumerSessionDecoratorTests.frame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class CoalescingSessionDecoratorTests {
+
+  private final WebSocketSession session = mock(WebSocketSession.class);
+  private final Map<String, Object> attributes = new HashMap<>();
+  private final List<String> sent = new CopyOnWriteArrayList<>();
+
+  private FrameCoalescer coalescer;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    when(session.getId()).thenReturn("s1");
+    when(session.getAttributes()).thenReturn(attributes);
+    doAnswer(invocation -> sent.add(((TextMessage) invocation.getArgument(0)).getPayload()))
+        .when(session)
+        .sendMessage(any());
+  }
+
+  @AfterEach
+  void tearDown() {
+    coalescer.shutdown();
+  }
+
+  @Test
+  void batchIsWrittenOnceTheSizeCapIsReached() throws Exception {
+    TextMessage first = frame("/topic/channel/a", "m0");
+    TextMessage second = frame("/topic/channel/a", "m1");
+    CoalescingSessionDecorator decorator =
+        decorator(60_000, first.getPayloadLength() + second.getPayloadLength());
+
+    decorator.sendMessage(first);
+    assertTrue(sent.isEmpty());
+    decorator.sendMessage(second);
+
+    assertEquals(List.of(first.getPayload() + second.getPayload()), sent);
+  }
+
+  @Test
+  void batchIsWrittenOnceTheWindowPassed() throws Exception {
+    CoalescingSessionDecorator decorator = decorator(50, 1 << 20);
+
+    for (int i = 0; i < 3; i++) {
+      decorator.sendMessage(frame("/topic/channel/a", "m" + i));
+    }
+    assertTrue(sent.isEmpty());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(
+        List.of(
+            frame("/topic/channel/a", "m0").getPayload()
+                + frame("/topic/channel/a", "m1").getPayload()
+                + frame("/topic/channel/a", "m2").getPayload()),
+        sent);
+  }
+
+  @Test
+  void closingWritesWhatIsPending() throws Exception {
+    CoalescingSessionDecorator decorator = decorator(60_000, 1 << 20);
+
+    decorator.sendMessage(frame("/topic/channel/a", "error"));
+    decorator.close(CloseStatus.SERVER_ERROR);
+
+    assertEquals(List.of(frame("/topic/channel/a", "error").getPayload()), sent);
+  }
+
+  @Test
+  void sessionsThatDidNotOptInAreNotDelayed() throws Exception {
+    coalescer = new FrameCoalescer(new SimpleMeterRegistry(), 60_000, 1 << 20, 1);
+    CoalescingSessionDecorator decorator = new CoalescingSessionDecorator(session, coalescer);
+
+    decorator.sendMessage(frame("/topic/channel/a", "m0"));
+
+    assertEquals(1, sent.size());
+  }
+
+  private CoalescingSessionDecorator decorator(long windowMillis, int maxBytes) {
+    coalescer = new FrameCoalescer(new SimpleMeterRegistry(), windowMillis, maxBytes, 1);
+    coalescer.connected(attributes, "true");
+    return new CoalescingSessionDecorator(session, coalescer);
+  }
+}
@@ -0,0 +1,78 @@
+package com.example.soen341_backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+class ExactMatchSubscriptionRegistryTests {
+
+  private final ExactMatchSubscriptionRegistry registry = new ExactMatchSubscriptionRegistry();
+
+  @Test
+  void resubscribingPatternIdToLiteralDestinationDropsPattern() {
+    registry.registerSubscription(subscribe("s1", "1", "/topic/channel/*"));
+    assertEquals(List.of("1"), subscriptionIds("/topic/channel/a", "s1"));
+
+    registry.registerSubscription(subscribe("s1", "1", "/topic/channel/b"));
+
+    assertTrue(registry.findSubscriptions(message("/topic/channel/a")).isEmpty());
+    assertEquals(List.of("1"), subscriptionIds("/topic/channel/b", "s1"));
+  }
+
+  @Test
+  void resubscribingPatternIdToAnotherPatternKeepsOnlyTheNewOne() {
+    registry.registerSubscription(subscribe("s1", "1", "/topic/channel/*"));
+    registry.registerSubscription(subscribe("s1", "1", "/topic/presence/*"));
+
+    assertTrue(registry.findSubscriptions(message("/topic/channel/a")).isEmpty());
+    assertEquals(List.of("1"), subscriptionIds("/topic/presence/a", "s1"));
+  }
+
+  @Test
+  void unsubscribeRemovesPatternAndLiteralSubscriptions() {
+    registry.registerSubscription(subscribe("s1", "1", "/topic/channel/*"));
+    registry.registerSubscription(subscribe("s1", "2", "/topic/channel/a"));
+
+    registry.unregisterSubscription(unsubscribe("s1", "1"));
+    assertEquals(List.of("2"), subscriptionIds("/topic/channel/a", "s1"));
+    assertTrue(registry.findSubscriptions(message("/topic/channel/b")).isEmpty());
+
+    registry.unregisterSubscription(unsubscribe("s1", "2"));
+    assertTrue(registry.findSubscriptions(message("/topic/channel/a")).isEmpty());
+    assertEquals(0, registry.getDestinationCount());
+  }
+
+  private List<String> subscriptionIds(String destination, String sessionId) {
+    return registry.findSubscriptions(message(destination)).get(sessionId);
+  }
+
+  private static Message<byte[]> subscribe(
+      String sessionId, String subscriptionId, String destination) {
+    SimpMessageHeaderAccessor accessor =
+        SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+    accessor.setSessionId(sessionId);
+    accessor.setSubscriptionId(subscriptionId);
+    accessor.setDestination(destination);
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+
+  private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+    SimpMessageHeaderAccessor accessor =
+        SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+    accessor.setSessionId(sessionId);
+    accessor.setSubscriptionId(subscriptionId);
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+
+  private static Message<byte[]> message(String destination) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setDestination(destination);
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+}
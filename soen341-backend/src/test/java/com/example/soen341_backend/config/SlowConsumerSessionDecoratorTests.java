@@ -0,0 +1,171 @@
+package com.example.soen341_backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+class SlowConsumerSessionDecoratorTests {
+
+  private final WebSocketSession session = mock(WebSocketSession.class);
+  private final List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+  private final CountDownLatch released = new CountDownLatch(1);
+  private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+
+  private ExecutorService sendExecutor;
+  private ThreadPoolTaskScheduler scheduler;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    sendExecutor = Executors.newFixedThreadPool(4);
+    scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    when(session.getId()).thenReturn("s1");
+    when(session.isOpen()).thenReturn(true);
+    // The first write blocks until released, like a client that stopped reading
+    doAnswer(
+            invocation -> {
+              firstSendStarted.countDown();
+              released.await(5, TimeUnit.SECONDS);
+              sent.add(invocation.getArgument(0));
+              return null;
+            })
+        .when(session)
+        .sendMessage(any());
+  }
+
+  @AfterEach
+  void tearDown() {
+    released.countDown();
+    sendExecutor.shutdownNow();
+    scheduler.shutdown();
+  }
+
+  @Test
+  void framesKeepTheirOrderWithoutBlockingTheCaller() throws Exception {
+    SlowConsumerSessionDecorator decorator = decorator(SlowConsumerPolicy.DROP, 10_000, 10_000);
+
+    for (int i = 0; i < 20; i++) {
+      decorator.sendMessage(frame("/topic/channel/a", "m" + i));
+    }
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    assertTrue(sent.isEmpty());
+
+    released.countDown();
+    awaitSent(20);
+    for (int i = 0; i < 20; i++) {
+      assertTrue(((TextMessage) sent.get(i)).getPayload().endsWith("m" + i + "\0"));
+    }
+  }
+
+  @Test
+  void framesBeyondTheBufferLimitAreDropped() throws Exception {
+    TextMessage first = frame("/topic/channel/a", "m0");
+    SlowConsumerSessionDecorator decorator =
+        decorator(SlowConsumerPolicy.DROP, 10_000, first.getPayloadLength() * 3);
+
+    decorator.sendMessage(first);
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    for (int i = 1; i < 10; i++) {
+      decorator.sendMessage(frame("/topic/channel/a", "m" + i));
+    }
+
+    released.countDown();
+    awaitSent(3);
+    Thread.sleep(100);
+    assertTrue(sent.size() < 10);
+    assertTrue(((TextMessage) sent.get(0)).getPayload().endsWith("m0\0"));
+  }
+
+  @Test
+  void disconnectPolicyFailsTheSendOnceTheTimeLimitPassed() throws Exception {
+    SlowConsumerSessionDecorator decorator = decorator(SlowConsumerPolicy.DISCONNECT, 50, 10_000);
+
+    decorator.sendMessage(frame("/topic/channel/a", "m0"));
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+
+    assertThrows(
+        SessionLimitExceededException.class,
+        () -> decorator.sendMessage(frame("/topic/channel/a", "m1")));
+  }
+
+  @Test
+  void coalescedBatchesWithBinaryBodiesAreSplitOnContentLength() throws Exception {
+    // {"v":0} in CBOR holds a 0x00 byte, which must not be taken for a frame terminator
+    byte[] body = new ObjectMapper(new CBORFactory()).writeValueAsBytes(Map.of("v", 0));
+    assertTrue(new String(body, StandardCharsets.ISO_8859_1).indexOf('\0') >= 0);
+    byte[] a = cborFrame("/topic/channel/a", body);
+    byte[] b = cborFrame("/topic/channel/b", body);
+    SlowConsumerSessionDecorator decorator =
+        decorator(SlowConsumerPolicy.COALESCE, 10_000, a.length + 1);
+
+    decorator.sendMessage(new TextMessage(a));
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    // Lagging now, so this batch of two frames is coalesced per destination
+    byte[] batch = new byte[a.length + b.length];
+    System.arraycopy(a, 0, batch, 0, a.length);
+    System.arraycopy(b, 0, batch, a.length, b.length);
+    decorator.sendMessage(new TextMessage(batch));
+
+    released.countDown();
+    awaitSent(3);
+    assertArrayEquals(a, ((TextMessage) sent.get(1)).asBytes());
+    assertArrayEquals(b, ((TextMessage) sent.get(2)).asBytes());
+  }
+
+  private SlowConsumerSessionDecorator decorator(
+      SlowConsumerPolicy policy, int sendTimeLimit, int bufferSizeLimit) {
+    return new SlowConsumerSessionDecorator(
+        session, sendTimeLimit, bufferSizeLimit, policy, sendExecutor, scheduler, 50);
+  }
+
+  private void awaitSent(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (sent.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, Math.min(sent.size(), count));
+  }
+
+  private static byte[] cborFrame(String destination, byte[] body) {
+    byte[] headers =
+        ("MESSAGE\ndestination:"
+                + destination
+                + "\ncontent-type:application/cbor\ncontent-length:"
+                + body.length
+                + "\n\n")
+            .getBytes(StandardCharsets.UTF_8);
+    byte[] frame = new byte[headers.length + body.length + 1];
+    System.arraycopy(headers, 0, frame, 0, headers.length);
+    System.arraycopy(body, 0, frame, headers.length, body.length);
+    return frame;
+  }
+
+  static TextMessage frame(String destination, String body) {
+    return new TextMessage("MESSAGE\ndestination:" + destination + "\n\n" + body + "\0");
+  }
+}
@@ -0,0 +1,114 @@
+package com.example.soen341_backend.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class WireFormatTests {
+
+  private static final byte[] JSON =
+      "{\"type\":\"CHAT\",\"content\":\"héllo\",\"ids\":[1,2.5,null,true]}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final WireFormatNegotiator negotiator =
+      new WireFormatNegotiator(new SimpleMeterRegistry(), 100);
+
+  @Test
+  void firstSupportedAcceptedFormatWins() {
+    assertEquals(WireFormat.CBOR, WireFormat.negotiate("application/cbor, application/json"));
+    assertEquals(WireFormat.SMILE, WireFormat.negotiate("text/plain, application/x-jackson-smile"));
+    assertEquals(WireFormat.JSON, WireFormat.negotiate("text/plain"));
+    assertEquals(WireFormat.JSON, WireFormat.negotiate("not a mime type;;"));
+    assertEquals(WireFormat.JSON, WireFormat.negotiate(null));
+  }
+
+  @Test
+  void textOnlyTransportsStayOnJson() {
+    assertEquals(WireFormat.JSON, negotiator.connected("s1", "application/cbor", false));
+    assertEquals(WireFormat.JSON, negotiator.formatOf("s1"));
+    assertEquals(WireFormat.CBOR, negotiator.connected("s1", "application/cbor", true));
+    assertEquals(WireFormat.CBOR, negotiator.formatOf("s1"));
+  }
+
+  @Test
+  void cborAndSmileFramesCarryTheSameDocumentAsJson() throws Exception {
+    JsonNode expected = new ObjectMapper().readTree(JSON);
+    for (WireFormat format : new WireFormat[] {WireFormat.CBOR, WireFormat.SMILE}) {
+      negotiator.connected("s1", format.getMimeType().toString(), true);
+
+      Message<?> sent = negotiator.preSend(jsonFrame("s1"), mock(MessageChannel.class));
+
+      assertEquals(
+          format.getMimeType(), sent.getHeaders().get(MessageHeaders.CONTENT_TYPE), format.name());
+      assertEquals(
+          expected,
+          new ObjectMapper(format.getFactory()).readTree((byte[]) sent.getPayload()),
+          format.name());
+    }
+  }
+
+  @Test
+  void broadcastIsTranscodedOncePerFormat() {
+    negotiator.connected("s1", "application/cbor", true);
+    negotiator.connected("s2", "application/cbor", true);
+
+    Message<?> first = negotiator.preSend(jsonFrame("s1"), mock(MessageChannel.class));
+    Message<?> second = negotiator.preSend(jsonFrame("s2"), mock(MessageChannel.class));
+
+    assertSame(first.getPayload(), second.getPayload());
+  }
+
+  @Test
+  void jsonSessionsAreLeftAlone() {
+    Message<byte[]> frame = jsonFrame("s1");
+
+    assertSame(frame, negotiator.preSend(frame, mock(MessageChannel.class)));
+  }
+
+  @Test
+  void binaryFormatsGoOutAsBinaryMessages() throws Exception {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn("s1");
+    WireFormatSessionDecorator decorator = new WireFormatSessionDecorator(session, negotiator);
+    ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+
+    decorator.sendMessage(new TextMessage("MESSAGE\n\n{}\0"));
+    negotiator.connected("s1", "application/cbor", true);
+    decorator.sendMessage(new TextMessage("MESSAGE\n\n{}\0"));
+
+    verify(session, times(2)).sendMessage(sent.capture());
+    assertInstanceOf(TextMessage.class, sent.getAllValues().get(0));
+    assertInstanceOf(BinaryMessage.class, sent.getAllValues().get(1));
+  }
+
+  // The same payload instance, as a fan-out hands it to every session
+  private static Message<byte[]> jsonFrame(String sessionId) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setSessionId(sessionId);
+    accessor.setDestination("/topic/channel/c1");
+    accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    return MessageBuilder.createMessage(JSON, accessor.getMessageHeaders());
+  }
+}
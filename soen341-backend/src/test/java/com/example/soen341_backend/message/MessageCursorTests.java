@@ -0,0 +1,128 @@
+package com.example.soen341_backend.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelMembership;
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.exceptions.BadRequestException;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserRepository;
+import com.example.soen341_backend.user.UserService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+class MessageCursorTests {
+
+  private static final Instant SAME_MILLI = Instant.ofEpochMilli(1_700_000_000_000L);
+  private static final Comparator<Message> HISTORY_ORDER =
+      Comparator.comparing(Message::getTimestamp).thenComparing(Message::getId);
+
+  @Test
+  void cursorSurvivesTheRoundTrip() {
+    MessageCursor cursor = new MessageCursor(SAME_MILLI, "65a1f0c2e4b0a1b2c3d4e5f6");
+
+    assertEquals(cursor, MessageCursor.decode(cursor.encode()));
+    assertNull(MessageCursor.decode(null));
+    assertThrows(BadRequestException.class, () -> MessageCursor.decode("not a cursor"));
+  }
+
+  @Test
+  void windowBreaksTimestampTiesOnTheId() {
+    MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(new ArrayList<>());
+
+    new MessageRepositoryCustomImpl(mongoTemplate)
+        .findWindow(
+            Criteria.where("channelId").is("c1"), new MessageCursor(SAME_MILLI, "b"), null, 5);
+
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    verify(mongoTemplate).find(query.capture(), eq(Message.class));
+    // {$and: [scope, {$or: [{timestamp < t}, {timestamp = t, id < "b"}]}]}
+    List<?> and = query.getValue().getQueryObject().getList("$and", Object.class);
+    List<?> or = ((Document) and.get(1)).getList("$or", Object.class);
+    assertEquals(new Document("$lt", SAME_MILLI), ((Document) or.get(0)).get("timestamp"));
+    assertEquals(
+        new Document("timestamp", SAME_MILLI).append("id", new Document("$lt", "b")), or.get(1));
+    assertEquals(new Document("timestamp", -1).append("id", -1), query.getValue().getSortObject());
+  }
+
+  @Test
+  void pagingThroughMessagesWithEqualTimestampsSkipsAndRepeatsNothing() {
+    List<Message> history =
+        Stream.of("a", "b", "c", "d", "e").map(id -> message(id, SAME_MILLI)).toList();
+    MessageRepository messageRepository = mock(MessageRepository.class);
+    // Keyset semantics of the history index: ordered by (timestamp, id)
+    when(messageRepository.findWindow(any(), any(), any(), anyInt()))
+        .thenAnswer(
+            invocation -> {
+              MessageCursor before = invocation.getArgument(1);
+              int limit = invocation.getArgument(3);
+              List<Message> older =
+                  history.stream()
+                      .filter(
+                          m ->
+                              before == null
+                                  || HISTORY_ORDER.compare(
+                                          m, message(before.id(), before.timestamp()))
+                                      < 0)
+                      .toList();
+              return new ArrayList<>(
+                  older.subList(Math.max(0, older.size() - limit), older.size()));
+            });
+    ChannelService channelService = mock(ChannelService.class);
+    when(channelService.getMembership("c1"))
+        .thenReturn(new ChannelMembership("c1", Set.of("u1"), Set.of(), false));
+    UserRepository userRepository = mock(UserRepository.class);
+    when(userRepository.findByUsername("alice"))
+        .thenReturn(Optional.of(User.builder().id("u1").username("alice").build()));
+    MessageService messageService =
+        new MessageService(
+            messageRepository,
+            channelService,
+            mock(UserService.class),
+            mock(FanoutSender.class),
+            userRepository,
+            mock(MessageWriteBehindQueue.class));
+
+    List<String> seen = new ArrayList<>();
+    String before = null;
+    MessagePage page;
+    do {
+      page = messageService.getChannelMessages("c1", "alice", before, null, 2);
+      seen.addAll(0, page.messages().stream().map(Message::getId).toList());
+      before = page.olderCursor();
+    } while (page.hasOlder());
+
+    assertEquals(List.of("a", "b", "c", "d", "e"), seen);
+    assertFalse(page.hasOlder());
+  }
+
+  private static Message message(String id, Instant timestamp) {
+    Message message = new Message();
+    message.setId(id);
+    message.setChannelId("c1");
+    message.setTimestamp(timestamp);
+    return message;
+  }
+}
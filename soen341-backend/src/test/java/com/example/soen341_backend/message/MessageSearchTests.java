@@ -0,0 +1,97 @@
+package com.example.soen341_backend.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.channel.ChannelSummary;
+import com.example.soen341_backend.channel.ChannelType;
+import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserRepository;
+import com.example.soen341_backend.user.UserService;
+import java.util.List;
+import java.util.Set;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+class MessageSearchTests {
+
+  private final MessageRepository messageRepository = mock(MessageRepository.class);
+  private final ChannelService channelService = mock(ChannelService.class);
+  private final UserService userService = mock(UserService.class);
+
+  private MessageService messageService;
+
+  @BeforeEach
+  void setUp() {
+    messageService =
+        new MessageService(
+            messageRepository,
+            channelService,
+            userService,
+            mock(FanoutSender.class),
+            mock(UserRepository.class),
+            mock(MessageWriteBehindQueue.class));
+    when(userService.getUserByUsername("alice"))
+        .thenReturn(User.builder().id("u1").username("alice").channelIds(Set.of("c1")).build());
+  }
+
+  @Test
+  void searchIsRestrictedToTheCallersConversations() {
+    when(channelService.getUserConversations("u1", Set.of("c1")))
+        .thenReturn(List.of(summary("c1"), summary("dm1")));
+    when(messageRepository.search(anyString(), any(), anyInt(), anyInt())).thenReturn(List.of());
+
+    messageService.searchMessages("alice", " hello ", null, 0, 20);
+
+    verify(messageRepository).search("hello", List.of("c1", "dm1"), 0, 21);
+  }
+
+  @Test
+  void searchInAChannelTheCallerIsNotInIsRejected() {
+    when(channelService.isMember("other", "u1")).thenReturn(false);
+
+    assertThrows(
+        UnauthorizedException.class,
+        () -> messageService.searchMessages("alice", "hello", "other", 0, 20));
+    verify(messageRepository, never()).search(anyString(), any(), anyInt(), anyInt());
+  }
+
+  @Test
+  void allConversationsAreSearchedWithOneQuery() {
+    MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    when(mongoTemplate.find(any(Query.class), eq(MessageSearchHit.class), eq("messages")))
+        .thenReturn(List.of());
+
+    new MessageRepositoryCustomImpl(mongoTemplate).search("hello", List.of("c1", "dm1"), 40, 21);
+
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    verify(mongoTemplate, times(1))
+        .find(query.capture(), eq(MessageSearchHit.class), eq("messages"));
+    Document filter = query.getValue().getQueryObject();
+    assertEquals(new Document("$in", List.of("c1", "dm1")), filter.get("channelId"));
+    assertEquals("hello", ((Document) filter.get("$text")).get("$search"));
+    assertEquals(40, query.getValue().getSkip());
+    assertEquals(21, query.getValue().getLimit());
+  }
+
+  private static ChannelSummary summary(String id) {
+    return new ChannelSummary(
+        id, id, ChannelType.GROUP, "u1", false, 1, Set.of(), Set.of(), null, null);
+  }
+}
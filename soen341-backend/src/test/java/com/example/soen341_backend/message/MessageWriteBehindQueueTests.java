@@ -0,0 +1,107 @@
+package com.example.soen341_backend.message;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserRepository;
+import com.example.soen341_backend.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+class MessageWriteBehindQueueTests {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final BulkOperations bulk = mock(BulkOperations.class);
+  private final MessageRepository messageRepository = mock(MessageRepository.class);
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final AtomicBoolean inserted = new AtomicBoolean();
+
+  private MessageWriteBehindQueue queue;
+  private MessageService messageService;
+
+  @BeforeEach
+  void setUp() {
+    queue =
+        new MessageWriteBehindQueue(
+            mongoTemplate,
+            mock(ApplicationEventPublisher.class),
+            new SimpleMeterRegistry(),
+            100,
+            10,
+            200,
+            200,
+            5000,
+            5000,
+            1000);
+    messageService =
+        new MessageService(
+            messageRepository,
+            mock(ChannelService.class),
+            mock(UserService.class),
+            mock(FanoutSender.class),
+            userRepository,
+            queue);
+    queue.start();
+    when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Message.class)))
+        .thenReturn(bulk);
+    when(bulk.execute())
+        .thenAnswer(
+            invocation -> {
+              inserted.set(true);
+              return null;
+            });
+    when(userRepository.findByUsername("alice"))
+        .thenReturn(Optional.of(User.builder().id("u1").username("alice").build()));
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    queue.shutdown();
+  }
+
+  @Test
+  void deleteBeforeTheFlushRunsAfterTheInsert() {
+    Message message = queue.enqueue(channelMessage());
+    // Only found once stored, like the database
+    when(messageRepository.findById(message.getId()))
+        .thenAnswer(invocation -> inserted.get() ? Optional.of(message) : Optional.empty());
+
+    messageService.deleteMessage(message.getId(), "alice");
+
+    InOrder order = inOrder(bulk, messageRepository);
+    order.verify(bulk).insert(anyList());
+    order.verify(bulk).execute();
+    order.verify(messageRepository).delete(message);
+  }
+
+  @Test
+  void messagesThatAreNotBufferedAreNotWaitedFor() {
+    long start = System.currentTimeMillis();
+    queue.awaitPersisted("unknown");
+    assertTrue(System.currentTimeMillis() - start < 100);
+  }
+
+  private static Message channelMessage() {
+    Message message = new Message();
+    message.setChannelId("c1");
+    message.setSenderId("u1");
+    message.setContent("hello");
+    return message;
+  }
+}
@@ -0,0 +1,56 @@
+package com.example.soen341_backend.payload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+class FanoutSenderTests {
+
+  private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+  private final ObjectMapper objectMapper = spy(new ObjectMapper());
+  private final FanoutSender fanoutSender =
+      new FanoutSender(messagingTemplate, objectMapper, new SimpleMeterRegistry());
+
+  @Test
+  void payloadIsEncodedOnceForAllUsers() throws Exception {
+    when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+
+    fanoutSender.sendToUsers(
+        List.of("u1", "u2", "u1"), FanoutSender.DIRECT_MESSAGES_QUEUE, Map.of("id", "m1"));
+
+    verify(objectMapper, times(1)).writeValueAsBytes(any());
+    ArgumentCaptor<String> destinations = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<Message<?>> messages = ArgumentCaptor.forClass(Message.class);
+    verify(messagingTemplate, times(2)).send(destinations.capture(), messages.capture());
+    assertEquals(
+        List.of("/user/u1/queue/direct-messages", "/user/u2/queue/direct-messages"),
+        destinations.getAllValues());
+    assertSame(messages.getAllValues().get(0), messages.getAllValues().get(1));
+  }
+
+  @Test
+  void everyDestinationGetsTheSameEncodedBody() throws Exception {
+    fanoutSender.send(List.of("/topic/channel/a", "/topic/channel/b"), Map.of("id", "m1"));
+
+    ArgumentCaptor<Message<?>> messages = ArgumentCaptor.forClass(Message.class);
+    verify(messagingTemplate, times(2)).send(anyString(), messages.capture());
+    byte[] body = (byte[]) messages.getAllValues().get(0).getPayload();
+    assertSame(body, messages.getAllValues().get(1).getPayload());
+    assertEquals(Map.of("id", "m1"), objectMapper.readValue(body, Map.class));
+  }
+}
@@ -0,0 +1,116 @@
+package com.example.soen341_backend.readstate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.message.MessageService;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+class ReadStateServiceTests {
+
+  private static final String ID = ReadState.idOf("u1", "c1");
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final BulkOperations bulk = mock(BulkOperations.class);
+  private final ChannelService channelService = mock(ChannelService.class);
+  private final MessageService messageService = mock(MessageService.class);
+
+  private ReadStateService readStateService;
+
+  @BeforeEach
+  void setUp() {
+    readStateService =
+        new ReadStateService(
+            mongoTemplate, new MongoMappingContext(), channelService, messageService);
+    when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ReadState.class)))
+        .thenReturn(bulk);
+    when(channelService.isMember("c1", "u1")).thenReturn(true);
+  }
+
+  @Test
+  void incrementBetweenTheCountAndTheWriteIsCountedIn() {
+    // A message of u2 is counted in right after the first count, which bumps the version
+    when(mongoTemplate.find(any(Query.class), eq(ReadState.class)))
+        .thenReturn(List.of(state(4)))
+        .thenReturn(List.of(state(5)));
+    when(messageService.countUnreadMessages(anyList(), eq("u1"), any(Instant.class)))
+        .thenReturn(Map.of())
+        .thenReturn(Map.of("c1", 1L));
+    when(bulk.execute()).thenThrow(duplicateKeyAt(0)).thenReturn(null);
+
+    readStateService.markRead("u1", new ReadCursorUpdate("c1", "m1", Instant.now()));
+    readStateService.flush();
+
+    ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+    verify(bulk, times(2)).upsert(queries.capture(), updates.capture());
+    assertEquals(
+        new Document("$in", List.of(4L)),
+        queries.getAllValues().get(0).getQueryObject().get("version"));
+    assertEquals(
+        new Document("$in", List.of(5L)),
+        queries.getAllValues().get(1).getQueryObject().get("version"));
+    assertEquals(1L, setOf(updates.getAllValues().get(1)).get("unreadCount"));
+
+    // Nothing is left over for the next flush
+    readStateService.flush();
+    verify(bulk, times(2)).execute();
+  }
+
+  @Test
+  void positionBehindTheStoredOneIsNotWritten() {
+    ReadState state = state(2);
+    state.setLastReadAt(Instant.now());
+    when(mongoTemplate.find(any(Query.class), eq(ReadState.class))).thenReturn(List.of(state));
+
+    readStateService.markRead(
+        "u1", new ReadCursorUpdate("c1", "m0", state.getLastReadAt().minusSeconds(60)));
+    readStateService.flush();
+
+    verify(bulk, times(0)).execute();
+  }
+
+  private static ReadState state(long version) {
+    return ReadState.builder().id(ID).userId("u1").channelId("c1").version(version).build();
+  }
+
+  private static Document setOf(Update update) {
+    return (Document) update.getUpdateObject().get("$set");
+  }
+
+  private static BulkOperationException duplicateKeyAt(int index) {
+    return new BulkOperationException(
+        "E11000",
+        new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(),
+            List.of(new BulkWriteError(11000, "E11000", new BsonDocument(), index)),
+            null,
+            new ServerAddress(),
+            Set.of()));
+  }
+}
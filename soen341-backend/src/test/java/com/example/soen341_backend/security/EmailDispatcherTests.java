@@ -0,0 +1,165 @@
+package com.example.soen341_backend.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+class EmailDispatcherTests {
+
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long INITIAL_BACKOFF_MS = 60_000;
+
+  @RegisterExtension
+  static GreenMailExtension smtpServer = new GreenMailExtension(ServerSetupTest.SMTP);
+
+  private final EmailOutbox outbox = mock(EmailOutbox.class);
+  private EmailDispatcher dispatcher;
+
+  @BeforeEach
+  void setUp() {
+    when(outbox.claimDue(anyInt(), any())).thenReturn(List.of());
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  void deliversSubmittedEmailsAndMarksThemSent() throws Exception {
+    claimable(email("1", "alice@example.com", 1));
+    claimable(email("2", "bob@example.com", 1));
+    dispatcher = start(smtpServer.getSmtp().getPort());
+
+    dispatcher.submit("1");
+    dispatcher.submit("2");
+
+    assertTrue(smtpServer.waitForIncomingEmail(5000, 2));
+    verify(outbox, timeout(5000)).markSent("1");
+    verify(outbox, timeout(5000)).markSent("2");
+    MimeMessage received = smtpServer.getReceivedMessages()[0];
+    assertEquals("Email Verification Code", received.getSubject());
+  }
+
+  @Test
+  void reschedulesWithBackoffWhenTheServerIsUnreachable() {
+    claimable(email("1", "alice@example.com", 1));
+    dispatcher = start(unusedPort());
+
+    Instant submittedAt = Instant.now();
+    dispatcher.submit("1");
+
+    ArgumentCaptor<Instant> nextAttempt = ArgumentCaptor.forClass(Instant.class);
+    verify(outbox, timeout(5000)).reschedule(eq("1"), nextAttempt.capture(), anyString());
+    assertFalse(nextAttempt.getValue().isBefore(submittedAt.plusMillis(INITIAL_BACKOFF_MS)));
+    verify(outbox, never()).markSent(any());
+  }
+
+  @Test
+  void givesUpAfterTheLastAttempt() {
+    claimable(email("1", "alice@example.com", MAX_ATTEMPTS));
+    dispatcher = start(unusedPort());
+
+    dispatcher.submit("1");
+
+    verify(outbox, timeout(5000)).markFailed(eq("1"), anyString());
+    verify(outbox, never()).reschedule(any(), any(), any());
+  }
+
+  @Test
+  void backoffDoublesUpToTheCap() {
+    dispatcher =
+        new EmailDispatcher(
+            outbox,
+            mailSender(0),
+            new SimpleMeterRegistry(),
+            0,
+            20,
+            10,
+            1000,
+            60_000,
+            MAX_ATTEMPTS,
+            1000,
+            5000);
+
+    assertTrue(dispatcher.backoffMillis(1) >= 1000 && dispatcher.backoffMillis(1) <= 1200);
+    assertTrue(dispatcher.backoffMillis(2) >= 2000 && dispatcher.backoffMillis(2) <= 2400);
+    assertTrue(dispatcher.backoffMillis(10) >= 5000 && dispatcher.backoffMillis(10) <= 6000);
+  }
+
+  private void claimable(OutboundEmail email) {
+    when(outbox.claim(eq(email.getId()), any())).thenReturn(Optional.of(email));
+  }
+
+  private EmailDispatcher start(int smtpPort) {
+    EmailDispatcher started =
+        new EmailDispatcher(
+            outbox,
+            mailSender(smtpPort),
+            new SimpleMeterRegistry(),
+            1,
+            20,
+            10,
+            100,
+            60_000,
+            MAX_ATTEMPTS,
+            INITIAL_BACKOFF_MS,
+            10 * INITIAL_BACKOFF_MS);
+    started.start();
+    return started;
+  }
+
+  private static JavaMailSenderImpl mailSender(int port) {
+    JavaMailSenderImpl sender = new JavaMailSenderImpl();
+    sender.setHost("localhost");
+    sender.setPort(port);
+    sender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "2000");
+    return sender;
+  }
+
+  private static OutboundEmail email(String id, String to, int attempts) {
+    return OutboundEmail.builder()
+        .id(id)
+        .to(to)
+        .subject("Email Verification Code")
+        .body("Your verification code is: 123456.")
+        .status(EmailDeliveryStatus.SENDING)
+        .attempts(attempts)
+        .build();
+  }
+
+  private static int unusedPort() {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.example.soen341_backend.security;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.example.soen341_backend.config.ClusterChangeStreams;
+import com.example.soen341_backend.readstate.ReadStateController;
+import com.example.soen341_backend.readstate.ReadStateService;
+import com.example.soen341_backend.user.User;
+import com.example.soen341_backend.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+class RevokedTokenRestTests {
+
+  private final RevokedTokenRepository revokedTokenRepository = mock(RevokedTokenRepository.class);
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final ReadStateService readStateService = mock(ReadStateService.class);
+  private final UserService userService = mock(UserService.class);
+
+  private final User user = User.builder().id("u1").username("alice").tokenVersion(0).build();
+
+  private TokenRevocationStore revocationStore;
+  private JwtUtils jwtUtils;
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() {
+    MongoMappingContext mappingContext = new MongoMappingContext();
+    mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+    when(mongoTemplate.indexOps(RevokedToken.class)).thenReturn(mock(IndexOperations.class));
+
+    revocationStore =
+        new TokenRevocationStore(
+            revokedTokenRepository,
+            mongoTemplate,
+            mappingContext,
+            mock(ClusterChangeStreams.class),
+            true,
+            1000);
+    jwtUtils = new JwtUtils(revocationStore, new SimpleMeterRegistry(), 100);
+
+    when(userService.getUserByUsername("alice")).thenReturn(user);
+    when(readStateService.getReadStates(eq("u1"))).thenReturn(List.of());
+    when(revokedTokenRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(
+                new ReadStateController(readStateService, userService, jwtUtils))
+            .build();
+  }
+
+  @Test
+  void revokedTokenIsRejected() throws Exception {
+    assertTrue(revocationStore.load());
+    String token = jwtUtils.generateToken(user);
+
+    mockMvc
+        .perform(get("/api/read-state").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+
+    jwtUtils.blacklistToken(token);
+
+    mockMvc
+        .perform(get("/api/read-state").header("Authorization", "Bearer " + token))
+        .andExpect(status().isUnauthorized());
+  }
+
+  @Test
+  void tokenFromBeforePasswordChangeIsRejected() throws Exception {
+    assertTrue(revocationStore.load());
+    String token = jwtUtils.generateToken(user);
+
+    user.setTokenVersion(1);
+    jwtUtils.revokeTokensBefore(user);
+
+    mockMvc
+        .perform(get("/api/read-state").header("Authorization", "Bearer " + token))
+        .andExpect(status().isUnauthorized());
+    mockMvc
+        .perform(
+            get("/api/read-state")
+                .header("Authorization", "Bearer " + jwtUtils.generateToken(user)))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  void tokensAreRejectedUntilRevocationsAreLoaded() throws Exception {
+    String token = jwtUtils.generateToken(user);
+
+    mockMvc
+        .perform(get("/api/read-state").header("Authorization", "Bearer " + token))
+        .andExpect(status().isServiceUnavailable());
+
+    assertTrue(revocationStore.load());
+
+    mockMvc
+        .perform(get("/api/read-state").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+  }
+}
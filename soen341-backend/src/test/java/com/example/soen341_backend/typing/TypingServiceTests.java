@@ -0,0 +1,92 @@
+package com.example.soen341_backend.typing;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelService;
+import com.example.soen341_backend.exceptions.UnauthorizedException;
+import com.example.soen341_backend.payload.FanoutSender;
+import com.example.soen341_backend.payload.TypingEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class TypingServiceTests {
+
+  private static final String TOPIC = TypingService.topicOf("c1");
+  private static final TypingEvent STARTED = new TypingEvent("c1", "u1", "alice", true);
+  private static final TypingEvent STOPPED = new TypingEvent("c1", "u1", "alice", false);
+
+  private final ChannelService channelService = mock(ChannelService.class);
+  private final FanoutSender fanoutSender = mock(FanoutSender.class);
+  private final TypingService typingService = new TypingService(channelService, fanoutSender);
+
+  @BeforeEach
+  void setUp() {
+    when(channelService.isMember("c1", "u1")).thenReturn(true);
+    settings(60_000, 60_000);
+  }
+
+  @Test
+  void repeatedReportsAreBroadcastOncePerRefresh() {
+    for (int i = 0; i < 5; i++) {
+      typingService.update("u1", "alice", new TypingUpdate("c1", true));
+    }
+    verify(fanoutSender, times(1)).send(TOPIC, STARTED);
+
+    settings(60_000, 0);
+    typingService.update("u1", "alice", new TypingUpdate("c1", true));
+    verify(fanoutSender, times(2)).send(TOPIC, STARTED);
+  }
+
+  @Test
+  void indicatorExpiresOnceWithoutReports() {
+    settings(0, 60_000);
+    typingService.update("u1", "alice", new TypingUpdate("c1", true));
+
+    typingService.expireStale();
+    typingService.expireStale();
+
+    verify(fanoutSender).send(TOPIC, STARTED);
+    verify(fanoutSender, times(1)).send(TOPIC, STOPPED);
+  }
+
+  @Test
+  void liveIndicatorIsNotExpired() {
+    typingService.update("u1", "alice", new TypingUpdate("c1", true));
+
+    typingService.expireStale();
+
+    verify(fanoutSender, never()).send(TOPIC, STOPPED);
+  }
+
+  @Test
+  void stopIsOnlyBroadcastForAShownIndicator() {
+    typingService.update("u1", "alice", new TypingUpdate("c1", false));
+    verifyNoMoreInteractions(fanoutSender);
+
+    typingService.update("u1", "alice", new TypingUpdate("c1", true));
+    typingService.update("u1", "alice", new TypingUpdate("c1", false));
+    verify(fanoutSender).send(TOPIC, STOPPED);
+  }
+
+  @Test
+  void nonMembersCannotShowAnIndicator() {
+    assertThrows(
+        UnauthorizedException.class,
+        () -> typingService.update("u2", "bob", new TypingUpdate("c1", true)));
+    verify(fanoutSender, never()).send(anyString(), any());
+  }
+
+  private void settings(long ttlMillis, long refreshMillis) {
+    ReflectionTestUtils.setField(typingService, "ttlMillis", ttlMillis);
+    ReflectionTestUtils.setField(typingService, "refreshMillis", refreshMillis);
+  }
+}
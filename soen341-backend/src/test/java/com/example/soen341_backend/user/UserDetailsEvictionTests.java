@@ -0,0 +1,83 @@
+package com.example.soen341_backend.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.soen341_backend.channel.ChannelRepository;
+import com.example.soen341_backend.config.ClusterUserRegistry;
+import com.example.soen341_backend.security.JwtUtils;
+import com.example.soen341_backend.security.UserDetailsServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+class UserDetailsEvictionTests {
+
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+
+  private UserDetailsServiceImpl userDetailsService;
+  private UserService userService;
+
+  @BeforeEach
+  void setUp() {
+    userDetailsService =
+        new UserDetailsServiceImpl(userRepository, new SimpleMeterRegistry(), 100, 3600);
+    userService =
+        new UserService(
+            userRepository,
+            mock(ChannelRepository.class),
+            passwordEncoder,
+            mock(JwtUtils.class),
+            mock(PresenceService.class),
+            userDetailsService,
+            mock(ClusterUserRegistry.class));
+    when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @Test
+  void passwordChangeEvictsCachedUserDetails() {
+    User stored = user("old-hash");
+    when(userRepository.findById("u1")).thenReturn(Optional.of(stored));
+    when(userRepository.findByUsername("alice")).thenAnswer(invocation -> Optional.of(stored));
+    when(passwordEncoder.encode("new-password")).thenReturn("new-hash");
+
+    assertEquals("old-hash", userDetailsService.loadCachedUserByUsername("alice").getPassword());
+
+    User update = user(null);
+    update.setPassword("new-password");
+    userService.updateUser("u1", update);
+
+    assertEquals("new-hash", userDetailsService.loadCachedUserByUsername("alice").getPassword());
+  }
+
+  @Test
+  void deletedUserIsNoLongerAuthenticatedFromTheCache() {
+    when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user("hash")));
+    userDetailsService.loadCachedUserByUsername("alice");
+
+    when(userRepository.findSummaryById("u1"))
+        .thenReturn(Optional.of(new UserSummary("u1", "alice", Status.OFFLINE, null)));
+    when(userRepository.findByUsername("alice")).thenReturn(Optional.empty());
+    userService.deleteUser("u1");
+
+    assertThrows(
+        UsernameNotFoundException.class,
+        () -> userDetailsService.loadCachedUserByUsername("alice"));
+  }
+
+  private static User user(String password) {
+    return User.builder()
+        .id("u1")
+        .username("alice")
+        .email("alice@example.com")
+        .password(password)
+        .build();
+  }
+}
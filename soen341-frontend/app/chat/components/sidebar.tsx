@@ -61,7 +61,7 @@ export function Sidebar({
 
   // Helper function to check if current user is an admin of the channel
   const currentUserIsAdmin = (channel: Channel): boolean => {
-    if (!currentUser || !channel.members) return false;
+    if (!currentUser) return false;
 
     return (
       channel.creatorId === currentUser.id ||
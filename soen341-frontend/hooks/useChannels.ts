@@ -58,7 +58,7 @@ export function useChannels(
           id: c.id,
           name: c.name,
           adminIds: c.adminIds || [],
-          members: c.members || [],
+          memberCount: c.memberCount,
         }))
       );
 
@@ -70,7 +70,7 @@ export function useChannels(
     }
   };
 
-  // Fetch all members of a specific channel with their details
+  // Fetch all members of a specific channel with their details, one page at a time
   const fetchChannelMembers = async (
     channelId: string,
     currentUser: User | null,
@@ -78,70 +78,53 @@ export function useChannels(
     setUsersMap: (usersMap: Record<string, User>) => void
   ) => {
     try {
-      const selectedChannel = channels.find((c) => c.id === channelId);
-      if (
-        !selectedChannel ||
-        !selectedChannel.members ||
-        selectedChannel.members.length === 0
-      ) {
-        console.log("No members found for this channel");
-        return;
-      }
-
-      console.log(
-        `Fetching details for ${selectedChannel.members.length} members`
-      );
-
       const updatedUsersMap = { ...usersMap };
 
       if (currentUser && !updatedUsersMap[currentUser.id]) {
         updatedUsersMap[currentUser.id] = currentUser;
       }
 
-      const fetchPromises = selectedChannel.members
-        .filter(
-          (memberId) =>
-            !updatedUsersMap[memberId] && memberId !== currentUser?.id
-        )
-        .map(async (memberId) => {
-          try {
-            const response = await fetch(
-              `${process.env.NEXT_PUBLIC_BASE_BACKEND_URL}/api/users/${memberId}`,
-              {
-                headers: {
-                  Authorization: `Bearer ${token}`,
-                  "Content-Type": "application/json",
-                },
-              }
-            );
-
-            if (!response.ok) {
-              console.error(
-                `Failed to fetch user ${memberId}: ${response.statusText}`
-              );
-              return null;
-            }
-
-            const userData = await response.json();
-            return userData;
-          } catch (error) {
-            console.error(`Error fetching user ${memberId}:`, error);
-            return null;
+      const memberIds: string[] = [];
+      let offset: number | null = 0;
+      while (offset !== null) {
+        const response = await fetch(
+          `${process.env.NEXT_PUBLIC_BASE_BACKEND_URL}/api/channels/${channelId}/members?offset=${offset}&limit=200`,
+          {
+            headers: {
+              Authorization: `Bearer ${token}`,
+              "Content-Type": "application/json",
+            },
           }
-        });
+        );
+
+        const page = (await handleApiResponse(response)) as {
+          members: User[];
+          memberCount: number;
+          nextOffset: number | null;
+        };
 
-      const results = await Promise.all(fetchPromises);
+        page.members.forEach((member) => {
+          memberIds.push(member.id);
+          // Keep fields only the full user carries, such as admin channels
+          updatedUsersMap[member.id] = {
+            ...updatedUsersMap[member.id],
+            ...member,
+          };
+        });
+        offset = page.nextOffset;
+      }
 
-      // Add fetched users to the map
-      results.forEach((user) => {
-        if (user && user.id) {
-          updatedUsersMap[user.id] = user;
-        }
-      });
+      console.log(
+        `Fetched ${memberIds.length} members for channel ${channelId}`
+      );
 
       setUsersMap(updatedUsersMap);
-      console.log(
-        `Updated usersMap with ${Object.keys(updatedUsersMap).length} users`
+      setChannels((prev) =>
+        prev.map((channel) =>
+          channel.id === channelId
+            ? { ...channel, members: memberIds }
+            : channel
+        )
       );
     } catch (error) {
       console.error("Error fetching channel members:", error);
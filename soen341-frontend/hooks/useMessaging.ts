@@ -25,11 +25,11 @@ export function useMessaging(
         },
       });
 
-      const data = (await handleApiResponse(
-        response
-      )) as Partial<WebSocketMessage>[];
+      const data = (await handleApiResponse(response)) as {
+        messages: Partial<WebSocketMessage>[];
+      };
 
-      const formattedMessages = data.map((msg) => ({
+      const formattedMessages = data.messages.map((msg) => ({
         ...msg,
         id: msg.id || `temp-${Date.now()}`,
         content: msg.content || "",
@@ -27,7 +27,9 @@ export interface Channel {
   creatorId?: string;
   senderUsername?: string;
   receiverUsername?: string;
+  // Filled in once the members have been fetched, see fetchChannelMembers
   members?: string[];
+  memberCount?: number;
   isDirectMessage?: boolean;
   directMessageMembers?: string[];
   adminIds?: string[];
@@ -139,8 +139,9 @@ const useChat = (
           }
         });
 
+        // Direct messages to and from this user, delivered to each of their sessions
         stompClient.subscribe(
-          `/user/${receiverId}/direct-messages`,
+          "/user/queue/direct-messages",
           (message) => {
             const receivedData = JSON.parse(message.body);
             console.log("Received DM data:", receivedData);
@@ -170,7 +171,18 @@ const useChat = (
                 newMessage.timestamp = new Date(newMessage.timestamp);
               }
               console.log("Received direct message:", newMessage);
-              setMessages((prev) => [...prev, newMessage]);
+
+              // The queue carries every conversation of this user; only the open one is shown
+              const inOpenConversation =
+                newMessage.channelId === channelId ||
+                (receiverId !== "" &&
+                  ((newMessage.senderId === userId &&
+                    newMessage.receiverId === receiverId) ||
+                    (newMessage.senderId === receiverId &&
+                      newMessage.receiverId === userId)));
+              if (inOpenConversation) {
+                setMessages((prev) => [...prev, newMessage]);
+              }
 
               // Show notification for new direct message
               showNotification(newMessage);
@@ -186,47 +198,6 @@ const useChat = (
             }
           }
         );
-
-        stompClient.subscribe(`/user/${userId}/direct-messages`, (message) => {
-          const receivedData = JSON.parse(message.body);
-          console.log("Received own DM data:", receivedData);
-
-          if (receivedData.type === "Message deleted") {
-            const messageId = receivedData.messageId;
-
-            setMessages((prev) => prev.filter((m) => m.id !== messageId));
-          } else if (receivedData.type === "Message updated") {
-            const updatedMessage = receivedData.message;
-
-            setMessages((prev) =>
-              prev.map((m) =>
-                m.id === updatedMessage.id
-                  ? {
-                      ...updatedMessage,
-                      timestamp: new Date(updatedMessage.timestamp),
-                    }
-                  : m
-              )
-            );
-          } else {
-            const newMessage = receivedData;
-
-            if (typeof newMessage.timestamp === "string") {
-              newMessage.timestamp = new Date(newMessage.timestamp);
-            }
-            console.log("Received own direct message:", newMessage);
-            setMessages((prev) => [...prev, newMessage]);
-
-            if (
-              onNewDirectMessage &&
-              newMessage.directMessage &&
-              newMessage.channelId
-            ) {
-              console.log("Calling onNewDirectMessage");
-              onNewDirectMessage(newMessage);
-            }
-          }
-        });
       },
       onDisconnect: () => console.log("Disconnected"),
     });
@@ -238,7 +209,7 @@ const useChat = (
       stompClient.deactivate();
     };
     // eslint-disable-next-line react-hooks/exhaustive-deps
-  }, [channelId, userId, token, showNotification]);
+  }, [channelId, userId, token, receiverId, showNotification]);
 
   // Send Group Message
   const sendGroupMessage = (content: string) => {